@@ -19,9 +19,10 @@
 package hudson.plugins.gearman;
 
 import java.util.Date;
+import java.util.HashSet;
 import java.util.Set;
 
-import org.gearman.common.GearmanNIOJobServerConnection;
+import org.gearman.common.GearmanJobServerConnection;
 import org.gearman.worker.GearmanFunctionFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -43,10 +44,14 @@ public abstract class AbstractWorkerThread implements Runnable {
     protected int port;
     protected String name;
     protected MyGearmanWorkerImpl worker;
-    protected GearmanNIOJobServerConnection conn;
+    protected GearmanJobServerConnection conn;
     protected AvailabilityMonitor availability;
     private Thread thread;
     private boolean running = false;
+    // Set when started as part of a staged startup
+    private WorkerStartup startup = null;
+    private boolean startupConnected = false;
+    private volatile boolean draining = false;
 
     public AbstractWorkerThread(String host, int port, String name,
                                 AvailabilityMonitor availability) {
@@ -59,13 +64,26 @@ public abstract class AbstractWorkerThread implements Runnable {
     protected void initWorker() {
         synchronized(this) {
             if (running) {
-                worker = new MyGearmanWorkerImpl(getAvailability());
-                // Use custom-built child class to enable keep-alive
-                conn = new GearmanNIOJobServerConnectionImpl(host, port);
+                worker = createWorker();
+                conn = createConnection(host, port);
             }
         }
     }
 
+    /*
+     * Create a connection to a gearman server.
+     */
+    static GearmanJobServerConnection createConnection(String host, int port) {
+        return GearmanTransport.forServer(host).createConnection(host, port);
+    }
+
+    /*
+     * Create the gearman worker used by this thread.
+     */
+    protected MyGearmanWorkerImpl createWorker() {
+        return new MyGearmanWorkerImpl(getAvailability());
+    }
+
     // Only for unit tests:
     protected void testInitWorker() {
         running = true;
@@ -114,7 +132,29 @@ public abstract class AbstractWorkerThread implements Runnable {
 
     }
 
+    /*
+     * Register jobs when the worker starts.
+     */
+    protected void registerInitialJobs() {
+        registerJobs();
+    }
+
+    public void setStartup(WorkerStartup startup) {
+        this.startup = startup;
+    }
+
     public void updateJobs(Set<GearmanFunctionFactory> functions) {
+        FunctionPartitioner partitioner = FunctionPartitioner.get();
+        if (partitioner != null) {
+            // Only register the functions this server owns
+            Set<GearmanFunctionFactory> owned = new HashSet<GearmanFunctionFactory>();
+            for (GearmanFunctionFactory factory : functions) {
+                if (partitioner.owns(host, port, factory.getFunctionName())) {
+                    owned.add(factory);
+                }
+            }
+            functions = owned;
+        }
         worker.setFunctions(functions);
     }
 
@@ -150,6 +190,52 @@ public abstract class AbstractWorkerThread implements Runnable {
         logger.debug("---- " + getName() + " Stop request done");
     }
 
+    /*
+     * Stop the thread once the worker is done with its current job, if
+     * any.  Unlike stop() this does not interrupt a running build.
+     */
+    public void stopGracefully() {
+        logger.info("---- " + getName() + " Request to gracefully stop AWT: " + this);
+        synchronized(this) {
+            running = false;
+            if (worker != null) {
+                worker.stopGracefully();
+            }
+        }
+    }
+
+    /*
+     * Whether the worker is currently running a job.
+     */
+    public synchronized boolean isBusy() {
+        return worker != null && worker.isBusy();
+    }
+
+    public synchronized int getRunningFunctions() {
+        return worker != null ? worker.getRunningFunctions() : 0;
+    }
+
+    /*
+     * Stop or resume grabbing jobs, see MyGearmanWorkerImpl.setDraining().
+     */
+    public synchronized void setDraining(boolean draining) {
+        this.draining = draining;
+        if (worker != null) {
+            worker.setDraining(draining);
+        }
+    }
+
+    public boolean isDraining() {
+        return draining;
+    }
+
+    /*
+     * Whether draining is done, see MyGearmanWorkerImpl.isDrained().
+     */
+    public synchronized boolean isDrained() {
+        return worker != null ? worker.isDrained() : draining;
+    }
+
     /*
      * Execute the thread (non-Javadoc)
      * @see java.lang.Runnable#run()
@@ -160,10 +246,14 @@ public abstract class AbstractWorkerThread implements Runnable {
         while (running) {
             try {
                 logger.info("---- Starting Worker "+ getName() +" ("+new Date().toString()+")");
-                worker.addServer(conn);
+                worker.setCoordinator(ServerCoordinator.forServer(host, port));
+                worker.setStandby(StandbySession.forPrimary(host, port));
+                worker.setStartup(startup, this);
+                worker.setDraining(draining);
+                addServer();
                 worker.setWorkerID(name);
                 worker.setJobUniqueIdRequired(true);
-                registerJobs();
+                registerInitialJobs();
                 worker.work();
             } catch (Exception e) {
                 logger.error("---- Exception while running worker " + getName(), e);
@@ -183,8 +273,41 @@ public abstract class AbstractWorkerThread implements Runnable {
         // Thread exits
     }
 
+    /*
+     * Connect the worker, the first time in a connect slot of the staged
+     * startup if any.  Later reconnects are paced by the ServerCoordinator.
+     */
+    private void addServer() throws InterruptedException {
+        if (startup == null || startupConnected) {
+            worker.addServer(conn);
+            return;
+        }
+        startup.acquireConnectSlot();
+        try {
+            worker.addServer(conn);
+            startupConnected = true;
+        } finally {
+            startup.releaseConnectSlot();
+        }
+    }
+
     public boolean isAlive() {
         return thread.isAlive();
     }
 
+    /*
+     * Wait at most the given time for the thread to exit.
+     *
+     * @return whether the thread exited
+     */
+    public boolean join(long millis) throws InterruptedException {
+        if (thread == null) {
+            return true;
+        }
+        if (millis > 0) {
+            thread.join(millis);
+        }
+        return !thread.isAlive();
+    }
+
 }
@@ -25,6 +25,10 @@ public interface AvailabilityMonitor {
     public void lock(MyGearmanWorkerImpl worker)
         throws InterruptedException;
 
+    // Reserve exclusive access for this worker if it is available right
+    // now, without waiting.
+    public boolean tryLock(MyGearmanWorkerImpl worker);
+
     // Release exclusive access for this worker.
     public void unlock(MyGearmanWorkerImpl worker);
 
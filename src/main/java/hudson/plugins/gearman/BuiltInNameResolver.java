@@ -0,0 +1,186 @@
+/*
+ *
+ * Copyright 2026 Jenkins project contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package hudson.plugins.gearman;
+
+import hudson.model.Computer;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+import jenkins.util.Timer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Resolves the name of the built-in node, used in the names of the
+ * workers and of the management functions.
+ *
+ * Finding the host name can mean a reverse DNS lookup which may take a
+ * long time, so it is done in the background and the result is cached.
+ * The cached name is looked up again in the background once it is older
+ * than the refresh interval; workers started afterwards use the new name.
+ */
+public class BuiltInNameResolver {
+
+    private static final Logger logger = LoggerFactory
+            .getLogger(Constants.PLUGIN_LOGGER_NAME);
+
+    private static final String PREFIX = BuiltInNameResolver.class.getName();
+    // How long a resolved name is used before looking it up again, 0 never
+    public static final long REFRESH_MS = SystemProperties.getLong(
+        PREFIX + ".refreshMillis", 600000L);
+    // How long starting workers waits for the first lookup
+    public static final long TIMEOUT_MS = SystemProperties.getLong(
+        PREFIX + ".timeoutMillis", 10000L);
+
+    private static BuiltInNameResolver instance;
+
+    private final Supplier<String> lookup;
+    private final Executor executor;
+    private final long refreshMillis;
+    private String name = null;
+    private long resolvedAt = 0;
+    private CompletableFuture<String> pending = null;
+
+    BuiltInNameResolver(Supplier<String> lookup, Executor executor,
+                        long refreshMillis) {
+        this.lookup = lookup;
+        this.executor = executor;
+        this.refreshMillis = refreshMillis;
+    }
+
+    public static synchronized BuiltInNameResolver getInstance() {
+        if (instance == null) {
+            instance = new BuiltInNameResolver(BuiltInNameResolver::lookup,
+                                               Timer.get(), REFRESH_MS);
+        }
+        return instance;
+    }
+
+    /*
+     * Start looking the name up unless it is cached and fresh, or a
+     * lookup is already running.
+     *
+     * @return the running lookup, or a completed one with the cached name
+     */
+    public synchronized CompletableFuture<String> refresh() {
+        if (pending != null) {
+            return pending;
+        }
+        if (name != null && (refreshMillis <= 0 ||
+                System.currentTimeMillis() - resolvedAt < refreshMillis)) {
+            return CompletableFuture.completedFuture(name);
+        }
+        // Completes once resolved() has cached the name
+        CompletableFuture<String> future = CompletableFuture
+            .supplyAsync(lookup, executor).whenComplete(this::resolved);
+        if (!future.isDone()) {
+            pending = future;
+        }
+        return future;
+    }
+
+    private synchronized void resolved(String resolved, Throwable e) {
+        pending = null;
+        if (e != null || resolved == null) {
+            logger.warn("---- Failed to resolve the built-in node name", e);
+            return;
+        }
+        if (name != null && !name.equals(resolved)) {
+            logger.info("---- Built-in node name changed from " + name + " to " +
+                        resolved + ", workers started from now on use the new name");
+        }
+        name = resolved;
+        resolvedAt = System.currentTimeMillis();
+    }
+
+    /*
+     * The cached name, without waiting.  Falls back to the default name
+     * until the first lookup is done.
+     */
+    public String getName() {
+        refresh();
+        return cachedName();
+    }
+
+    private synchronized String cachedName() {
+        return name != null ? name : Constants.GEARMAN_DEFAULT_EXECUTOR_NAME;
+    }
+
+    /*
+     * The name, waiting for the first lookup if needed.  A stale name is
+     * returned right away and refreshed in the background.
+     */
+    public String await(long timeoutMillis) {
+        CompletableFuture<String> future = refresh();
+        synchronized (this) {
+            if (name != null) {
+                return name;
+            }
+        }
+        try {
+            String resolved = future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            if (resolved != null) {
+                return resolved;
+            }
+        } catch (TimeoutException e) {
+            logger.warn("---- Built-in node name not resolved after " + timeoutMillis +
+                        "ms, using " + Constants.GEARMAN_DEFAULT_EXECUTOR_NAME);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // Already logged, looked up again next time
+        }
+        return cachedName();
+    }
+
+    /*
+     * Find the host name of the built-in node, or of this host when the
+     * built-in node has no executors.
+     */
+    static String lookup() {
+        Computer builtInNode = null;
+        String hostname = Constants.GEARMAN_DEFAULT_EXECUTOR_NAME;
+        // query Jenkins for built-in name
+        try {
+            builtInNode = Jenkins.get().getComputer("");
+            hostname = builtInNode.getHostName();
+        } catch (Exception e) {
+            logger.warn("Exception while getting hostname", e);
+        }
+        // Built-in node may not be enabled so get builtInName from system
+        if (builtInNode == null) {
+            try {
+                hostname = InetAddress.getLocalHost().getHostName();
+            } catch (UnknownHostException e) {
+                logger.warn("Exception while getting hostname", e);
+            }
+        }
+        return hostname;
+    }
+}
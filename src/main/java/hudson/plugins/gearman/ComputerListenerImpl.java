@@ -49,12 +49,13 @@ public class ComputerListenerImpl extends ComputerListener {
             return;
         }
 
+        // adjust the number of workers to the number of executors, the
+        // method does not tell which computer changed so check all of them
+        GearmanProxy.getInstance().reconcileExecutorWorkers();
+
         // re-register gearman functions on node configuration changes,
         // specifically node label changes
         GearmanProxy.getInstance().registerJobs();
-
-        // TODO: adjust for an update to executors. Method does not provide the
-        // computer to know which thread to remove or add
     }
 
     @Override
@@ -88,6 +89,12 @@ public class ComputerListenerImpl extends ComputerListener {
         }
 
         GearmanProxy gp = GearmanProxy.getInstance();
+        // the workers of every node are started together when Jenkins
+        // boots or the plugin is enabled, including the nodes coming
+        // online before that
+        if (!gp.isStarted()) {
+            return;
+        }
         /*
          * Spawn management executor worker if one doesn't exist yet.
          * This worker does not need any executors. It only needs
@@ -28,63 +28,157 @@ package hudson.plugins.gearman;
 
 import hudson.model.Computer;
 
-import java.lang.reflect.Constructor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
-import org.gearman.common.Constants;
 import org.gearman.worker.DefaultGearmanFunctionFactory;
 import org.gearman.worker.GearmanFunction;
-import org.slf4j.LoggerFactory;
 
+/*
+ * Creates the function running a Gearman job for a project on a node.
+ *
+ * Factories are immutable and shared by all the workers of a node; the
+ * worker is only bound when a function is instantiated for a job it
+ * received.
+ */
 public class CustomGearmanFunctionFactory extends DefaultGearmanFunctionFactory {
 
     private final GearmanProject project;
     private final Computer computer;
     private final String theClass;
     private final String builtInName;
-    private final MyGearmanWorkerImpl worker;
 
-    private static final org.slf4j.Logger LOG =  LoggerFactory.getLogger(
-            Constants.GEARMAN_WORKER_LOGGER_NAME);
+    private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(
+        GearmanFunction.class, GearmanProject.class, Computer.class,
+        String.class, MyGearmanWorkerImpl.class);
+    private static final Map<String, MethodHandle> constructors =
+        new ConcurrentHashMap<String, MethodHandle>();
+
+    // Shared factories by node, then by function name
+    private static final Map<Computer, Map<String, CustomGearmanFunctionFactory>> factories =
+        new ConcurrentHashMap<Computer, Map<String, CustomGearmanFunctionFactory>>();
 
     public CustomGearmanFunctionFactory(String functionName, String className,
                                         GearmanProject project, Computer computer,
-                                        String builtInName,
-                                        MyGearmanWorkerImpl worker) {
+                                        String builtInName) {
         super(functionName, className);
         this.theClass = className;
         this.project = project;
         this.computer = computer;
         this.builtInName = builtInName;
-        this.worker = worker;
     }
 
+    /*
+     * Return the factory for a function on a node, creating it unless the
+     * node already has one for the same job.
+     */
+    public static CustomGearmanFunctionFactory get(String functionName, String className,
+                                                   GearmanProject project, Computer computer,
+                                                   String builtInName) {
+        Map<String, CustomGearmanFunctionFactory> nodeFactories = factories.computeIfAbsent(
+            computer, c -> new ConcurrentHashMap<String, CustomGearmanFunctionFactory>());
+        return nodeFactories.compute(functionName, (name, factory) -> {
+            if (factory != null && factory.project.getJob() == project.getJob() &&
+                factory.theClass.equals(className) &&
+                Objects.equals(factory.builtInName, builtInName)) {
+                return factory;
+            }
+            // The job was replaced, e.g. by reloading its configuration
+            return new CustomGearmanFunctionFactory(name, className, project,
+                                                    computer, builtInName);
+        });
+    }
+
+    /*
+     * Drop the shared factories of a node which is going away.
+     */
+    public static void release(Computer computer) {
+        factories.remove(computer);
+    }
 
+    /*
+     * Drop the shared factories of a node for functions which were not
+     * planned again, e.g. of deleted or relabeled jobs.  Workers still
+     * registering one keep it until their next registration.
+     */
+    public static void retain(Computer computer, Set<String> functionNames) {
+        Map<String, CustomGearmanFunctionFactory> nodeFactories = factories.get(computer);
+        if (nodeFactories != null) {
+            nodeFactories.keySet().retainAll(functionNames);
+        }
+    }
+
+    /*
+     * Number of shared factories of a node, for tests.
+     */
+    static int size(Computer computer) {
+        Map<String, CustomGearmanFunctionFactory> nodeFactories = factories.get(computer);
+        return nodeFactories == null ? 0 : nodeFactories.size();
+    }
+
+    /**
+     * Create the function for a job received by the worker running on the
+     * calling thread, see {@link MyGearmanWorkerImpl#current()}.
+     *
+     * @throws IllegalArgumentException if the class is not a usable function
+     *         or this is not called from a worker's run loop
+     * @throws IllegalStateException if the function constructor failed
+     */
     @Override
     public GearmanFunction getFunction() {
-        return createFunctionInstance(theClass, project, computer, builtInName,
-                                      worker);
+        return getFunction(MyGearmanWorkerImpl.current());
     }
 
-    private static GearmanFunction createFunctionInstance(String className, GearmanProject project, Computer computer, String builtInName, MyGearmanWorkerImpl worker) {
-
-        GearmanFunction f = null;
+    /**
+     * Create the function for a job received by a worker.
+     *
+     * @throws IllegalArgumentException if the class is not a usable function
+     *         or there is no worker
+     * @throws IllegalStateException if the function constructor failed
+     */
+    public GearmanFunction getFunction(MyGearmanWorkerImpl worker) {
+        if (worker == null) {
+            throw new IllegalArgumentException("Function " + getFunctionName() +
+                                               " needs the worker running it");
+        }
+        MethodHandle constructor = constructor(theClass);
         try {
+            return (GearmanFunction) constructor.invokeExact(project, computer,
+                                                             builtInName, worker);
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException("Unable to create instance of " +
+                                            "Function: " + theClass, t);
+        }
+    }
 
-            Class<?> c = Class.forName(className);
-            Constructor<?> con = c.getConstructor(new Class[]{GearmanProject.class, Computer.class, String.class, MyGearmanWorkerImpl.class});
-            Object o = con.newInstance(new Object[] {project, computer, builtInName, worker});
-
-            if (o instanceof GearmanFunction) {
-                f = (GearmanFunction) o;
-            } else {
-                LOG.warn("Specified class " + className +
-                        " is not a Gearman Function ");
+    /*
+     * Resolve the constructor of a function class once, rather than looking
+     * it up reflectively for every job.
+     */
+    static MethodHandle constructor(String className) {
+        return constructors.computeIfAbsent(className, name -> {
+            try {
+                Class<?> c = Class.forName(name);
+                if (!GearmanFunction.class.isAssignableFrom(c)) {
+                    throw new IllegalArgumentException("Specified class " + name +
+                                                       " is not a Gearman Function");
+                }
+                return MethodHandles.publicLookup()
+                    .findConstructor(c, CONSTRUCTOR_TYPE.changeReturnType(void.class))
+                    .asType(CONSTRUCTOR_TYPE);
+            } catch (ClassNotFoundException | NoSuchMethodException |
+                     IllegalAccessException e) {
+                throw new IllegalArgumentException("Unable to find constructor of " +
+                                                   "Function: " + name, e);
             }
-        } catch (Exception e) {
-            LOG.warn("Unable to create instance of " +
-                    "Function: " + className, e);
-        }
-        return f;
+        });
     }
 
 }
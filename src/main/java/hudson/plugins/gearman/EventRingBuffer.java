@@ -0,0 +1,185 @@
+/*
+ *
+ * Copyright 2026 Jenkins project contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package hudson.plugins.gearman;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.gearman.common.GearmanPacketType;
+import org.gearman.common.GearmanSessionEvent;
+
+/**
+ * Bounded queue of the session events a worker has to process.
+ *
+ * Any thread may add events, only the worker thread takes them.  Slots are
+ * preallocated and claimed with a sequence number each, so adding and
+ * taking events allocates nothing.
+ *
+ * Events are tagged with the epoch in which they were added.  Advancing
+ * the epoch when the worker reconnects discards the events of the old
+ * connection without reallocating anything.
+ *
+ * When the buffer is full a NOOP is coalesced: it is kept aside and handed
+ * out once the buffer is drained, since a single NOOP is enough to start a
+ * GRAB_JOB cycle.  Any other event is refused and the buffer flagged as
+ * overflowed; the worker then has to reset its session since it lost
+ * track of the server state.
+ */
+public class EventRingBuffer {
+
+    private final int mask;
+    private final GearmanSessionEvent[] events;
+    private final long[] epochs;
+    // For each slot, the position it may be written at or, once written,
+    // that position + 1.
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private long head = 0;      // only used by the consumer
+    private volatile long epoch = 0;
+    private final AtomicReference<GearmanSessionEvent> coalescedNoop =
+        new AtomicReference<GearmanSessionEvent>();
+    private volatile boolean overflowed = false;
+
+    public EventRingBuffer(int capacity) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("Capacity must be at least 2");
+        }
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        mask = size - 1;
+        events = new GearmanSessionEvent[size];
+        epochs = new long[size];
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Add an event, from any thread.
+     *
+     * @return false if the event was refused because the buffer is full
+     */
+    public boolean offer(GearmanSessionEvent event) {
+        long currentEpoch = epoch;
+        long pos = tail.get();
+        while (true) {
+            int i = (int) (pos & mask);
+            long available = sequences.get(i) - pos;
+            if (available == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    events[i] = event;
+                    epochs[i] = currentEpoch;
+                    // Publish the event to the consumer
+                    sequences.set(i, pos + 1);
+                    return true;
+                }
+                pos = tail.get();
+            } else if (available < 0) {
+                return overflow(event);
+            } else {
+                // Another producer claimed this position
+                pos = tail.get();
+            }
+        }
+    }
+
+    private boolean overflow(GearmanSessionEvent event) {
+        if (event.getPacket().getPacketType() == GearmanPacketType.NOOP) {
+            coalescedNoop.set(event);
+            return true;
+        }
+        overflowed = true;
+        return false;
+    }
+
+    /**
+     * Take the next event of the current epoch, or null if there is none.
+     * Only called by the worker thread.
+     */
+    public GearmanSessionEvent poll() {
+        if (skipStale()) {
+            int i = (int) (head & mask);
+            GearmanSessionEvent event = events[i];
+            release(i);
+            return event;
+        }
+        return coalescedNoop.getAndSet(null);
+    }
+
+    /**
+     * Return the next event of the current epoch without taking it.  Only
+     * called by the worker thread.
+     */
+    public GearmanSessionEvent peek() {
+        if (skipStale()) {
+            return events[(int) (head & mask)];
+        }
+        return coalescedNoop.get();
+    }
+
+    /*
+     * Drop the events of older epochs at the head of the buffer, and
+     * return whether an event is left there.
+     */
+    private boolean skipStale() {
+        while (true) {
+            int i = (int) (head & mask);
+            if (sequences.get(i) != head + 1) {
+                return false;
+            }
+            if (epochs[i] == epoch) {
+                return true;
+            }
+            release(i);
+        }
+    }
+
+    private void release(int i) {
+        events[i] = null;
+        sequences.set(i, head + mask + 1);
+        head++;
+    }
+
+    /**
+     * Discard every pending event and start a new epoch.  Only called by
+     * the worker thread.
+     */
+    public void advanceEpoch() {
+        epoch++;
+        coalescedNoop.set(null);
+        overflowed = false;
+    }
+
+    /**
+     * Whether an event other than a NOOP was refused since the epoch
+     * started.
+     */
+    public boolean hasOverflowed() {
+        return overflowed;
+    }
+
+    public boolean isEmpty() {
+        return peek() == null;
+    }
+}
@@ -27,8 +27,10 @@ import org.gearman.worker.GearmanFunctionFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 
@@ -48,6 +50,8 @@ public class ExecutorWorkerThread extends AbstractWorkerThread{
     private final String builtInName;
 
     private HashMap<String,GearmanFunctionFactory> functionMap;
+    // Functions computed ahead by a staged startup, see setPlan()
+    private Map<String,GearmanFunctionFactory> plan = null;
 
     // constructor
     public ExecutorWorkerThread(String host, int port, String name,
@@ -99,13 +103,34 @@ public class ExecutorWorkerThread extends AbstractWorkerThread{
      *      build:pep8 on oneiric-459
      *
      */
-    @Override
-    public void registerJobs() {
+    private void registerPlannedJobs() {
         if (worker == null || functionMap == null) {
             // We haven't been initialized yet; the run method will call this again
             return;
         }
 
+        HashMap<String,GearmanFunctionFactory> newFunctionMap;
+        Map<String,GearmanFunctionFactory> startupPlan = takePlan();
+        if (startupPlan != null) {
+            newFunctionMap = new HashMap<String,GearmanFunctionFactory>(startupPlan);
+        } else {
+            newFunctionMap = planFunctions(computer, builtInName);
+        }
+        logger.debug("---- Worker "+ getName() +" registerJobs try to register " + newFunctionMap.size() + " function(s)");
+        if (!newFunctionMap.keySet().equals(functionMap.keySet())) {
+            functionMap = newFunctionMap;
+            Set<GearmanFunctionFactory> functionSet = new HashSet<GearmanFunctionFactory>(functionMap.values());
+            updateJobs(functionSet);
+        } else {
+            logger.debug("---- Worker "+ getName() +" registerJobs no changes");
+        }
+    }
+
+    /*
+     * The functions the workers of a computer register, by name.
+     */
+    static HashMap<String,GearmanFunctionFactory> planFunctions(Computer computer,
+                                                              String builtInName) {
         HashMap<String,GearmanFunctionFactory> newFunctionMap = new HashMap<String,GearmanFunctionFactory>();
 
         if (!computer.isOffline()) {
@@ -124,9 +149,9 @@ public class ExecutorWorkerThread extends AbstractWorkerThread{
                                      // "build:projectName" on all non exclusive nodes
                     if (node.getMode() != Mode.EXCLUSIVE) {
                         String jobFunctionName = "build:" + projectName;
-                        newFunctionMap.put(jobFunctionName, new CustomGearmanFunctionFactory(
+                        newFunctionMap.put(jobFunctionName, CustomGearmanFunctionFactory.get(
                             jobFunctionName, StartJobWorker.class.getName(),
-                            project, computer, this.builtInName, worker));
+                            project, computer, builtInName));
                     }
                 } else { // register "build:$projectName:$label" if this
                          // node matches a node from the project label
@@ -143,30 +168,57 @@ public class ExecutorWorkerThread extends AbstractWorkerThread{
                     if (projectLabelNodes.contains(node)) {
                         String jobFunctionName = "build:" + projectName;
                         // register without label (i.e. "build:$projectName")
-                        newFunctionMap.put(jobFunctionName, new CustomGearmanFunctionFactory(
+                        newFunctionMap.put(jobFunctionName, CustomGearmanFunctionFactory.get(
                                 jobFunctionName, StartJobWorker.class.getName(),
-                                project, computer, this.builtInName, worker));
+                                project, computer, builtInName));
                         // iterate over the intersection of project and node labels
                         for (LabelAtom labelAtom : nodeProjectLabelAtoms) {
                             jobFunctionName = "build:" + projectName
                                 + ":" + labelAtom.getDisplayName();
                             // register with label (i.e. "build:$projectName:$label")
-                            newFunctionMap.put(jobFunctionName, new CustomGearmanFunctionFactory(
+                            newFunctionMap.put(jobFunctionName, CustomGearmanFunctionFactory.get(
                                     jobFunctionName, StartJobWorker.class.getName(),
-                                    project, computer, this.builtInName, worker));
+                                    project, computer, builtInName));
                         }
                     }
                 }
             }
         }
-        logger.debug("---- Worker "+ getName() +" registerJobs try to register " + newFunctionMap.size() + " function(s)");
-        if (!newFunctionMap.keySet().equals(functionMap.keySet())) {
-            functionMap = newFunctionMap;
-            Set<GearmanFunctionFactory> functionSet = new HashSet<GearmanFunctionFactory>(functionMap.values());
-            updateJobs(functionSet);
-        } else {
-            logger.debug("---- Worker "+ getName() +" registerJobs no changes");
-        }
+        CustomGearmanFunctionFactory.retain(computer, newFunctionMap.keySet());
+        return newFunctionMap;
+    }
+
+    /*
+     * Register the functions planned for this computer during a staged
+     * startup the first time, instead of computing them again.
+     */
+    public synchronized void setPlan(Map<String,GearmanFunctionFactory> plan) {
+        this.plan = plan;
+    }
+
+    private synchronized Map<String,GearmanFunctionFactory> takePlan() {
+        Map<String,GearmanFunctionFactory> p = plan;
+        plan = null;
+        return p;
+    }
+
+    /*
+     * Jobs changed, so a plan computed earlier may be stale.
+     */
+    @Override
+    public void registerJobs() {
+        setPlan(null);
+        registerPlannedJobs();
+    }
+
+    @Override
+    protected void registerInitialJobs() {
+        registerPlannedJobs();
+    }
+
+    // Only for unit tests:
+    synchronized Collection<GearmanFunctionFactory> getFunctionFactories() {
+        return functionMap.values();
     }
 
     public synchronized Computer getComputer() {
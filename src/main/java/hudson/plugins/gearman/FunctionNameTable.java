@@ -0,0 +1,205 @@
+/*
+ *
+ * Copyright 2026 Jenkins project contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package hudson.plugins.gearman;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.gearman.common.GearmanPacket;
+import org.gearman.common.GearmanPacketType;
+import org.gearman.util.ByteUtils;
+
+/**
+ * Global table of Gearman function names.
+ *
+ * Every name gets a small integer id, and its canonical String, UTF-8
+ * encoding and CAN_DO and CANT_DO packets are stored once for all
+ * workers.  Workers keep the functions they registered as a BitSet of ids,
+ * so comparing registrations is a matter of bitwise operations instead of
+ * hashing strings.
+ *
+ * Ids are reference counted: whoever keeps an id, like a worker for each
+ * bit of its BitSets, takes a reference with acquire() and gives it back
+ * with release().  Once the last reference is gone the entry is dropped and
+ * its id handed out again, smallest first, so that jobs coming and going
+ * neither grow the table nor the BitSets.
+ */
+public final class FunctionNameTable {
+
+    private static final class Entry {
+        final int id;
+        final String name;
+        final byte[] bytes;
+        final GearmanPacket canDo;
+        final GearmanPacket cantDo;
+        // Dead once it dropped to zero, it is never raised again then
+        final AtomicInteger refs = new AtomicInteger(1);
+
+        Entry(int id, String name) {
+            this.id = id;
+            this.name = name;
+            bytes = ByteUtils.toUTF8Bytes(name);
+            canDo = GearmanPacketCodec.encoded(GearmanPacketType.CAN_DO, bytes);
+            cantDo = GearmanPacketCodec.encoded(GearmanPacketType.CANT_DO, bytes);
+        }
+
+        boolean retain() {
+            int count;
+            do {
+                count = refs.get();
+                if (count == 0) {
+                    return false;
+                }
+            } while (!refs.compareAndSet(count, count + 1));
+            return true;
+        }
+    }
+
+    private static final ConcurrentHashMap<String, Entry> byName =
+        new ConcurrentHashMap<String, Entry>();
+    // Indexed by id, only changed under the class lock
+    private static volatile Entry[] entries = new Entry[64];
+    // Ids below top which are free again, under the class lock
+    private static final BitSet free = new BitSet();
+    private static int top = 0;
+    private static int size = 0;
+
+    private FunctionNameTable() {
+    }
+
+    /**
+     * Return the id of a function name, assigning one if needed, and take a
+     * reference to it.
+     */
+    public static int acquire(String name) {
+        Entry entry = byName.get(name);
+        if (entry != null && entry.retain()) {
+            return entry.id;
+        }
+        return add(name);
+    }
+
+    /**
+     * Take another reference to an id the caller holds one of.
+     */
+    public static void acquire(int id) {
+        Entry entry = entries[id];
+        if (entry == null || !entry.retain()) {
+            throw new IllegalStateException("Function name id " + id + " is not in use");
+        }
+    }
+
+    /**
+     * Give back a reference to an id, which must not be used anymore.
+     */
+    public static void release(int id) {
+        Entry entry = entries[id];
+        int count = entry.refs.decrementAndGet();
+        if (count == 0) {
+            remove(entry);
+        } else if (count < 0) {
+            throw new IllegalStateException("Function name id " + id + " released too often");
+        }
+    }
+
+    /**
+     * Give back a reference to each id of the set, and clear it.
+     */
+    public static void release(BitSet ids) {
+        for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+            release(id);
+        }
+        ids.clear();
+    }
+
+    private static synchronized int add(String name) {
+        Entry entry = byName.get(name);
+        if (entry != null && entry.retain()) {
+            return entry.id;
+        }
+        // Absent, or dead and about to be removed
+        int id = free.nextSetBit(0);
+        if (id >= 0) {
+            free.clear(id);
+        } else {
+            id = top++;
+            if (id == entries.length) {
+                entries = Arrays.copyOf(entries, id * 2);
+            }
+        }
+        entry = new Entry(id, name);
+        // Publish the entry before the id can be looked up
+        entries[id] = entry;
+        byName.put(name, entry);
+        size++;
+        return id;
+    }
+
+    private static synchronized void remove(Entry entry) {
+        // Unless a new entry already took over the name
+        byName.remove(entry.name, entry);
+        entries[entry.id] = null;
+        free.set(entry.id);
+        size--;
+    }
+
+    /**
+     * The canonical String of a function name.
+     */
+    public static String name(int id) {
+        return entries[id].name;
+    }
+
+    /**
+     * The UTF-8 encoding of a function name; must not be modified.
+     */
+    public static byte[] bytes(int id) {
+        return entries[id].bytes;
+    }
+
+    /**
+     * The CAN_DO packet registering a function, encoded only once.
+     */
+    public static GearmanPacket canDo(int id) {
+        return entries[id].canDo;
+    }
+
+    /**
+     * The CANT_DO packet unregistering a function, encoded only once.
+     */
+    public static GearmanPacket cantDo(int id) {
+        return entries[id].cantDo;
+    }
+
+    /**
+     * Number of function names in use.
+     */
+    public static synchronized int size() {
+        return size;
+    }
+
+    /*
+     * Number of ids ever handed out at once, for tests.
+     */
+    static synchronized int capacity() {
+        return top;
+    }
+}
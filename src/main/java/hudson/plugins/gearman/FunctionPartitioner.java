@@ -0,0 +1,220 @@
+/*
+ *
+ * Copyright 2026 Jenkins project contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package hudson.plugins.gearman;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import jenkins.util.SystemProperties;
+
+/**
+ * Assigns function names to the servers of a gearman cluster by
+ * consistent hashing, so that each function is registered on a single
+ * server instead of on all of them.
+ *
+ * The ring is the one of ketama: 160 points per server, 4 taken from
+ * each MD5 digest of "host:port-N" for N from 0 to 39, and a function
+ * belongs to the first point at or after the little endian first 4 bytes
+ * of the MD5 digest of its name.  Adding or removing a server only moves
+ * the functions of the ring segments it gains or loses.  Clients find the
+ * server to submit a job to with owner(), or with any ketama
+ * implementation given the same list of servers.
+ *
+ * Enabled by listing the servers, as host:port separated by commas, in
+ * the hudson.plugins.gearman.FunctionPartitioner.servers system property.
+ * Workers are then started for the servers of the list instead of the
+ * configured server, on each node for the servers owning at least one of
+ * its functions.
+ */
+public class FunctionPartitioner {
+
+    public static final String SERVERS = SystemProperties.getString(
+        FunctionPartitioner.class.getName() + ".servers");
+
+    private static final int DIGESTS_PER_SERVER = 40;
+
+    private static final FunctionPartitioner instance =
+        SERVERS == null || SERVERS.trim().isEmpty() ? null : new FunctionPartitioner(SERVERS);
+
+    /*
+     * A gearman server of the cluster.
+     */
+    public static final class Server {
+        private final String host;
+        private final int port;
+
+        public Server(String host, int port) {
+            this.host = host;
+            this.port = port;
+        }
+
+        /*
+         * Parse host:port, the port defaulting to the gearman port.
+         */
+        public static Server parse(String server) {
+            String host = server.trim();
+            int port = Constants.GEARMAN_DEFAULT_TCP_PORT;
+            int colon = host.lastIndexOf(':');
+            if (!GearmanSocketConnection.isUnixSocket(host) && colon > 0) {
+                port = Integer.parseInt(host.substring(colon + 1));
+                host = host.substring(0, colon);
+            }
+            return new Server(host, port);
+        }
+
+        public String getHost() {
+            return host;
+        }
+
+        public int getPort() {
+            return port;
+        }
+
+        public boolean is(String host, int port) {
+            return this.host.equals(host) && this.port == port;
+        }
+
+        @Override
+        public String toString() {
+            return host + ":" + port;
+        }
+    }
+
+    private final List<Server> servers;
+    // Sorted points of the ring and the server each of them belongs to
+    private final long[] points;
+    private final Server[] owners;
+
+    /*
+     * A partitioner for a comma separated list of servers.
+     */
+    public FunctionPartitioner(String servers) {
+        List<Server> list = new ArrayList<Server>();
+        for (String server : servers.split(",")) {
+            if (!server.trim().isEmpty()) {
+                list.add(Server.parse(server));
+            }
+        }
+        if (list.isEmpty()) {
+            throw new IllegalArgumentException("No gearman server in " + servers);
+        }
+        this.servers = Collections.unmodifiableList(list);
+
+        int count = list.size() * DIGESTS_PER_SERVER * 4;
+        long[] unsorted = new long[count];
+        Server[] unsortedOwners = new Server[count];
+        int n = 0;
+        for (Server server : list) {
+            for (int i = 0; i < DIGESTS_PER_SERVER; i++) {
+                byte[] digest = md5(server + "-" + i);
+                for (int h = 0; h < 4; h++) {
+                    unsorted[n] = point(digest, h);
+                    unsortedOwners[n] = server;
+                    n++;
+                }
+            }
+        }
+        // Sort the points along with their owners
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(unsorted[a], unsorted[b]));
+        points = new long[count];
+        owners = new Server[count];
+        for (int i = 0; i < count; i++) {
+            points[i] = unsorted[order[i]];
+            owners[i] = unsortedOwners[order[i]];
+        }
+    }
+
+    /*
+     * The partitioner configured for this Jenkins, or null if functions
+     * are registered on a single server.
+     */
+    public static FunctionPartitioner get() {
+        return instance;
+    }
+
+    public List<Server> getServers() {
+        return servers;
+    }
+
+    /*
+     * The server a function is registered on.
+     */
+    public Server owner(String function) {
+        long hash = point(md5(function), 0);
+        int i = Arrays.binarySearch(points, hash);
+        if (i < 0) {
+            i = -i - 1;
+        }
+        return owners[i == points.length ? 0 : i];
+    }
+
+    /*
+     * The servers owning at least one of the functions, in list order.
+     */
+    public List<Server> serversOwning(Collection<String> functions) {
+        Set<Server> owning = new HashSet<Server>();
+        for (String function : functions) {
+            if (owning.add(owner(function)) && owning.size() == servers.size()) {
+                break;
+            }
+        }
+        List<Server> result = new ArrayList<Server>();
+        for (Server server : servers) {
+            if (owning.contains(server)) {
+                result.add(server);
+            }
+        }
+        return result;
+    }
+
+    /*
+     * Whether the workers of a server register a function.
+     */
+    public boolean owns(String host, int port, String function) {
+        return owner(function).is(host, port);
+    }
+
+    private static long point(byte[] digest, int h) {
+        return ((long) (digest[3 + h * 4] & 0xFF) << 24)
+            | ((long) (digest[2 + h * 4] & 0xFF) << 16)
+            | ((long) (digest[1 + h * 4] & 0xFF) << 8)
+            | (digest[h * 4] & 0xFF);
+    }
+
+    private static byte[] md5(String s) {
+        try {
+            return MessageDigest.getInstance("MD5").digest(
+                s.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not available", e);
+        }
+    }
+}
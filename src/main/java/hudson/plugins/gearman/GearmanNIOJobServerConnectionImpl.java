@@ -10,6 +10,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 
+/**
+ * gearman-java connection with keep-alive enabled through reflection.
+ * Unlike GearmanSocketConnection it does not apply {@link SocketTuning}.
+ */
 public class GearmanNIOJobServerConnectionImpl extends GearmanNIOJobServerConnection {
 
     private static final Logger logger = LoggerFactory
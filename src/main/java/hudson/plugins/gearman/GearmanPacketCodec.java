@@ -0,0 +1,306 @@
+/*
+ *
+ * Copyright 2026 Jenkins project contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package hudson.plugins.gearman;
+
+import java.nio.ByteBuffer;
+import java.util.EnumMap;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import org.gearman.common.GearmanPacket;
+import org.gearman.common.GearmanPacketImpl;
+import org.gearman.common.GearmanPacketMagic;
+import org.gearman.common.GearmanPacketType;
+
+/**
+ * Binary encoding of the Gearman packets used by our workers.
+ *
+ * Every packet is a 12 byte header (magic, type and data length as big
+ * endian integers) followed by the data.  Frames are written straight into
+ * pooled buffers rather than going through GearmanPacketImpl.toBytes(),
+ * and the packets we send all the time (GRAB_JOB_UNIQ, PRE_SLEEP, the
+ * CAN_DO and CANT_DO of each function, ...) as well as the NOOP we use to
+ * wake ourselves up are encoded once.
+ *
+ * @see GearmanSocketConnection
+ */
+public final class GearmanPacketCodec {
+
+    public static final int HEADER_SIZE = 12;
+
+    static final int REQ_MAGIC = 0x00524551; // "\0REQ"
+    static final int RES_MAGIC = 0x00524553; // "\0RES"
+
+    // Packet type names indexed by their protocol value
+    private static final String[] TYPE_NAMES = {
+        null, "CAN_DO", "CANT_DO", "RESET_ABILITIES", "PRE_SLEEP", null,
+        "NOOP", "SUBMIT_JOB", "JOB_CREATED", "GRAB_JOB", "NO_JOB",
+        "JOB_ASSIGN", "WORK_STATUS", "WORK_COMPLETE", "WORK_FAIL",
+        "GET_STATUS", "ECHO_REQ", "ECHO_RES", "SUBMIT_JOB_BG", "ERROR",
+        "STATUS_RES", "SUBMIT_JOB_HIGH", "SET_CLIENT_ID", "CAN_DO_TIMEOUT",
+        "ALL_YOURS", "WORK_EXCEPTION", "OPTION_REQ", "OPTION_RES",
+        "WORK_DATA", "WORK_WARNING", "GRAB_JOB_UNIQ", "JOB_ASSIGN_UNIQ",
+    };
+
+    private static final GearmanPacketType[] types =
+        new GearmanPacketType[TYPE_NAMES.length];
+    private static final EnumMap<GearmanPacketType, Integer> values =
+        new EnumMap<GearmanPacketType, Integer>(GearmanPacketType.class);
+
+    static {
+        for (int i = 0; i < TYPE_NAMES.length; i++) {
+            if (TYPE_NAMES[i] != null) {
+                types[i] = GearmanPacketType.valueOf(TYPE_NAMES[i]);
+                values.put(types[i], i);
+            }
+        }
+    }
+
+    private static final byte[] NO_DATA = new byte[0];
+
+    // Packets without data we handle all the time
+    public static final GearmanPacket NOOP = new EncodedPacket(
+        GearmanPacketMagic.RES, GearmanPacketType.NOOP, NO_DATA);
+    public static final GearmanPacket NO_JOB = new EncodedPacket(
+        GearmanPacketMagic.RES, GearmanPacketType.NO_JOB, NO_DATA);
+    public static final GearmanPacket GRAB_JOB = new EncodedPacket(
+        GearmanPacketMagic.REQ, GearmanPacketType.GRAB_JOB, NO_DATA);
+    public static final GearmanPacket GRAB_JOB_UNIQ = new EncodedPacket(
+        GearmanPacketMagic.REQ, GearmanPacketType.GRAB_JOB_UNIQ, NO_DATA);
+    public static final GearmanPacket PRE_SLEEP = new EncodedPacket(
+        GearmanPacketMagic.REQ, GearmanPacketType.PRE_SLEEP, NO_DATA);
+    public static final GearmanPacket RESET_ABILITIES = new EncodedPacket(
+        GearmanPacketMagic.REQ, GearmanPacketType.RESET_ABILITIES, NO_DATA);
+    public static final GearmanPacket ECHO_REQ = new EncodedPacket(
+        GearmanPacketMagic.REQ, GearmanPacketType.ECHO_REQ, NO_DATA);
+
+    // Buffers are pooled in power of two size classes from 64 bytes to
+    // 64 kilobytes; bigger ones are simply allocated.
+    private static final int MIN_POOLED_SHIFT = 6;
+    private static final int MAX_POOLED_SHIFT = 16;
+    private static final int POOL_SIZE = 256;
+    @SuppressWarnings("unchecked")
+    private static final ArrayBlockingQueue<ByteBuffer>[] pools =
+        new ArrayBlockingQueue[MAX_POOLED_SHIFT - MIN_POOLED_SHIFT + 1];
+
+    static {
+        for (int i = 0; i < pools.length; i++) {
+            pools[i] = new ArrayBlockingQueue<ByteBuffer>(POOL_SIZE);
+        }
+    }
+
+    private GearmanPacketCodec() {
+    }
+
+    /*
+     * Protocol value of a packet type.
+     */
+    static int valueOf(GearmanPacketType type) {
+        Integer value = values.get(type);
+        if (value == null) {
+            throw new IllegalArgumentException("Unsupported packet type " + type);
+        }
+        return value;
+    }
+
+    /*
+     * Packet type of a protocol value, or null if unknown.
+     */
+    static GearmanPacketType typeOf(int value) {
+        if (value < 0 || value >= types.length) {
+            return null;
+        }
+        return types[value];
+    }
+
+    /**
+     * Take a buffer of at least the given capacity from the pool, ready to
+     * be written to.
+     */
+    public static ByteBuffer acquire(int capacity) {
+        int shift = Math.max(MIN_POOLED_SHIFT, 32 - Integer.numberOfLeadingZeros(capacity - 1));
+        if (shift > MAX_POOLED_SHIFT) {
+            return ByteBuffer.allocate(capacity);
+        }
+        ByteBuffer buffer = pools[shift - MIN_POOLED_SHIFT].poll();
+        if (buffer == null) {
+            buffer = ByteBuffer.allocate(1 << shift);
+        }
+        return buffer;
+    }
+
+    /**
+     * Give a buffer obtained from acquire() back to the pool.
+     */
+    public static void release(ByteBuffer buffer) {
+        int capacity = buffer.capacity();
+        if (buffer.isReadOnly() || Integer.bitCount(capacity) != 1) {
+            return;
+        }
+        int shift = Integer.numberOfTrailingZeros(capacity);
+        if (shift >= MIN_POOLED_SHIFT && shift <= MAX_POOLED_SHIFT) {
+            buffer.clear();
+            pools[shift - MIN_POOLED_SHIFT].offer(buffer);
+        }
+    }
+
+    /**
+     * Encode a packet into a buffer ready to be written to a channel.
+     * Constant and registration packets are returned as views of shared
+     * read-only frames, other ones in a pooled buffer which should be
+     * released once written.
+     */
+    public static ByteBuffer encode(GearmanPacket packet) {
+        if (packet instanceof EncodedPacket) {
+            return ((EncodedPacket) packet).frame();
+        }
+
+        byte[] data = packet.getData();
+        int length = data == null ? 0 : data.length;
+        ByteBuffer frame = acquire(HEADER_SIZE + length);
+        frame.putInt(packet.getMagic() == GearmanPacketMagic.REQ ? REQ_MAGIC : RES_MAGIC);
+        frame.putInt(valueOf(packet.getPacketType()));
+        frame.putInt(length);
+        if (length > 0) {
+            frame.put(data);
+        }
+        frame.flip();
+        return frame;
+    }
+
+    /**
+     * A request sent over and over again, like the CAN_DO and CANT_DO of a
+     * function, encoded once.  Its data must not be modified.
+     *
+     * @see FunctionNameTable
+     */
+    public static GearmanPacket encoded(GearmanPacketType type, byte[] data) {
+        return new EncodedPacket(GearmanPacketMagic.REQ, type, data);
+    }
+
+    /*
+     * A packet which is sent over and over again, so its frame is encoded
+     * once and shared read-only.
+     */
+    static final class EncodedPacket extends GearmanPacketImpl {
+
+        private final ByteBuffer frame;
+
+        EncodedPacket(GearmanPacketMagic magic, GearmanPacketType type, byte[] data) {
+            super(magic, type, data);
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + data.length);
+            buffer.putInt(magic == GearmanPacketMagic.REQ ? REQ_MAGIC : RES_MAGIC);
+            buffer.putInt(valueOf(type));
+            buffer.putInt(data.length);
+            buffer.put(data);
+            buffer.flip();
+            frame = buffer.asReadOnlyBuffer();
+        }
+
+        ByteBuffer frame() {
+            return frame.duplicate();
+        }
+
+        @Override
+        public byte[] toBytes() {
+            // Used by the gearman-java connection
+            byte[] bytes = new byte[frame.capacity()];
+            frame.duplicate().get(bytes);
+            return bytes;
+        }
+    }
+
+    /**
+     * Size of the first frame in the buffer (between its position and
+     * limit), or -1 if its header is not complete yet.
+     *
+     * @throws IllegalArgumentException if the header is not valid
+     */
+    public static int frameSize(ByteBuffer buffer) {
+        if (buffer.remaining() < HEADER_SIZE) {
+            return -1;
+        }
+        int start = buffer.position();
+        int magic = buffer.getInt(start);
+        if (magic != RES_MAGIC && magic != REQ_MAGIC) {
+            throw new IllegalArgumentException("Invalid packet magic " + Integer.toHexString(magic));
+        }
+        int length = buffer.getInt(start + 8);
+        if (length < 0 || length > Integer.MAX_VALUE - HEADER_SIZE) {
+            throw new IllegalArgumentException("Invalid packet length " + length);
+        }
+        return HEADER_SIZE + length;
+    }
+
+    /**
+     * Decode the complete frame at the position of the buffer and move past
+     * it.  The packet data is copied since GearmanPacket and the functions
+     * it is handed to hold a byte array, so the buffer can be reused.
+     *
+     * @throws IllegalArgumentException if the frame is not a valid packet
+     */
+    public static GearmanPacket decode(ByteBuffer buffer) {
+        int start = buffer.position();
+        int size = frameSize(buffer);
+        if (size < 0 || buffer.remaining() < size) {
+            throw new IllegalArgumentException("Incomplete packet");
+        }
+        GearmanPacketMagic magic = buffer.getInt(start) == REQ_MAGIC ?
+            GearmanPacketMagic.REQ : GearmanPacketMagic.RES;
+        GearmanPacketType type = typeOf(buffer.getInt(start + 4));
+        if (type == null) {
+            throw new IllegalArgumentException("Unknown packet type " + buffer.getInt(start + 4));
+        }
+        if (size == HEADER_SIZE && magic == GearmanPacketMagic.RES) {
+            // The packets of an idle worker are shared
+            if (type == GearmanPacketType.NOOP) {
+                buffer.position(start + size);
+                return NOOP;
+            } else if (type == GearmanPacketType.NO_JOB) {
+                buffer.position(start + size);
+                return NO_JOB;
+            }
+        }
+        if (type == GearmanPacketType.JOB_ASSIGN_UNIQ || type == GearmanPacketType.JOB_ASSIGN) {
+            // Reject truncated assignments before they reach the worker
+            int fields = type == GearmanPacketType.JOB_ASSIGN_UNIQ ? 3 : 2;
+            int found = separators(buffer, start + HEADER_SIZE, start + size, fields);
+            if (found < fields) {
+                throw new IllegalArgumentException("Job assignment has " + found +
+                                                   " fields instead of " + (fields + 1));
+            }
+        }
+        byte[] data = new byte[size - HEADER_SIZE];
+        buffer.position(start + HEADER_SIZE);
+        buffer.get(data);
+        return new GearmanPacketImpl(magic, type, data);
+    }
+
+    /*
+     * Number of NUL separators between from and to, counting up to max.
+     */
+    private static int separators(ByteBuffer buffer, int from, int to, int max) {
+        int found = 0;
+        for (int i = from; i < to && found < max; i++) {
+            if (buffer.get(i) == 0) {
+                found++;
+            }
+        }
+        return found;
+    }
+}
@@ -25,6 +25,11 @@ import hudson.util.FormValidation;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.channels.SocketChannel;
+import java.util.Collections;
+import java.util.List;
 
 import jakarta.servlet.ServletException;
 
@@ -102,34 +107,50 @@ public class GearmanPluginConfig extends GlobalConfiguration {
             GearmanProxy.getInstance().stopAll();
 
         } else if (enablePlugin && !prevEnablePlugin) { // gearman-plugin goes from OFF to ON state
-            // check for a valid connection to server
-            if (!connectionIsAvailable(host, port, 5000)) {
+            // check for a valid connection to the servers workers use
+            if (getPartitionedServers().isEmpty() &&
+                !connectionIsAvailable(host, port, 5000)) {
                 enablePlugin = false;
                 throw new FormException("Unable to connect to Gearman server. "
                             + "Please check the server connection settings and retry.",
                             "host");
             }
+            for (FunctionPartitioner.Server server : getPartitionedServers()) {
+                if (!connectionIsAvailable(server.getHost(), server.getPort(), 5000)) {
+                    enablePlugin = false;
+                    throw new FormException("Unable to connect to Gearman server "
+                                + server + ". Please check the "
+                                + FunctionPartitioner.class.getName() + ".servers"
+                                + " system property and retry.", "host");
+                }
+            }
 
             // run workers
             GearmanProxy.getInstance().initWorkers();
 
         } else if (enablePlugin && prevEnablePlugin) { // gearman-plugin stays in the ON state
             // update connection for a plugin config change
-            if (!host.equals(prevHost) || port != prevPort) {
-
-                // stop the workers on the current connected
-                GearmanProxy.getInstance().stopAll();
+            if ((!host.equals(prevHost) || port != prevPort) &&
+                !getPartitionedServers().isEmpty()) {
+                // workers don't use it, see getPartitionedServers()
+                logger.warn("---- Gearman server changed to " + host + ":" + port
+                            + " but workers keep using " + getPartitionedServers()
+                            + ", set with " + FunctionPartitioner.class.getName()
+                            + ".servers");
+            } else if (!host.equals(prevHost) || port != prevPort) {
 
                 // check for a valid connection to server
                 if (!connectionIsAvailable(host, port, 5000)) {
+                    // stop the workers on the current connection
+                    GearmanProxy.getInstance().stopAll();
                     enablePlugin = false;
                     throw new FormException("Unable to connect to Gearman server. "
                                 + "Please check the server connection settings and retry.",
                                 "host");
                 }
 
-                // run workers with new connection
-                GearmanProxy.getInstance().initWorkers();
+                // move the workers to the new connection, node by node
+                GearmanProxy.getInstance().migrateWorkers();
             }
 
         }
@@ -191,6 +212,23 @@ public class GearmanPluginConfig extends GlobalConfiguration {
         }
     }
 
+    /**
+     * The servers functions are partitioned among, set with the
+     * hudson.plugins.gearman.FunctionPartitioner.servers system property.
+     * Workers then connect to them and the configured host and port are
+     * not used.
+     *
+     * @return the servers, or an empty list if workers use the configured
+     *      host and port
+     */
+    public List<FunctionPartitioner.Server> getPartitionedServers() {
+        FunctionPartitioner partitioner = FunctionPartitioner.get();
+        if (partitioner == null) {
+            return Collections.emptyList();
+        }
+        return partitioner.getServers();
+    }
+
     /*
      * This method checks whether a connection is open and available
      * on $host:$port
@@ -210,6 +248,19 @@ public class GearmanPluginConfig extends GlobalConfiguration {
     private boolean connectionIsAvailable(String host, int port,
             int timeout) {
 
+        if (GearmanSocketConnection.isUnixSocket(host)) {
+            SocketAddress endPoint = GearmanSocketConnection.address(host, port);
+            try (SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+                channel.connect(endPoint);
+                logger.debug("Connection Success:    " + endPoint);
+                return true;
+            } catch (Exception e) {
+                logger.warn("Connection Failure:    " + endPoint + " message: "
+                        + e.getClass().getSimpleName() + " - " + e.getMessage());
+                return false;
+            }
+        }
+
         InetSocketAddress endPoint = new InetSocketAddress(host, port);
         Socket socket = new Socket();
 
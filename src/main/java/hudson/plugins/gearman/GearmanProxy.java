@@ -23,15 +23,29 @@ import hudson.model.Node;
 import hudson.model.Run;
 import hudson.model.Queue;
 import hudson.model.queue.CauseOfBlockage;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
-import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+
+import org.gearman.worker.GearmanFunctionFactory;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -52,7 +66,22 @@ public class GearmanProxy {
     // handles to gearman workers
     private final List<ExecutorWorkerThread> gewtHandles;
     private final List<ManagementWorkerThread> gmwtHandles;
-    private final String builtInName;
+    // Workers being replaced by a migration, still in the handles until
+    // their thread exits
+    private final Set<AbstractWorkerThread> retiring = ConcurrentHashMap.newKeySet();
+    private volatile boolean workersStarted = false;
+    private volatile boolean draining = false;
+
+    private static final String PREFIX = GearmanProxy.class.getName();
+    // How long stopAll() waits for the workers to exit
+    public static final long STOP_TIMEOUT_MS = SystemProperties.getLong(
+        PREFIX + ".stopTimeoutMillis", 10000L);
+    public static final int STOP_THREADS = SystemProperties.getInteger(
+        PREFIX + ".stopThreads", 16);
+    // How long old workers keep serving a node while migrating to a new server
+    public static final long MIGRATION_TIMEOUT_MS = SystemProperties.getLong(
+        PREFIX + ".migrationTimeoutMillis", 120000L);
+    private static final long MIGRATION_POLL_MS = 500;
 
     // Singleton instance
     public static synchronized GearmanProxy getInstance() {
@@ -67,25 +96,46 @@ public class GearmanProxy {
         gewtHandles = Collections.synchronizedList(new ArrayList<ExecutorWorkerThread>());
         gmwtHandles = Collections.synchronizedList(new ArrayList<ManagementWorkerThread>());
 
-        Computer builtInNode = null;
-        String hostname = Constants.GEARMAN_DEFAULT_EXECUTOR_NAME;
-        // query Jenkins for built-in name
-        try {
-            builtInNode = Jenkins.get().getComputer("");
-            hostname = builtInNode.getHostName();
-        } catch (Exception e) {
-            logger.warn("Exception while getting hostname", e);
+        // Resolved in the background, see getBuiltInName()
+        BuiltInNameResolver.getInstance().refresh();
+    }
+
+    /*
+     * Start the workers once Jenkins has loaded its nodes and jobs.  This
+     * is done on a separate thread so that connecting to the gearman
+     * server and planning the functions don't delay the boot.  Nodes
+     * coming online before the workers are started are picked up then.
+     */
+    @Initializer(after = InitMilestone.COMPLETED)
+    public static void startOnBoot() {
+        if (!GearmanPluginConfig.get().isEnablePlugin()) {
+            return;
         }
-        // Built-in node may not be enabled so get builtInName from system
-        if (builtInNode == null) {
+        Thread starter = new Thread(() -> {
             try {
-                hostname = java.net.InetAddress.getLocalHost().getHostName();
-            } catch (UnknownHostException e) {
-                logger.warn("Exception while getting hostname", e);
+                getInstance().initWorkers();
+            } catch (Exception e) {
+                logger.error("---- Failed to start the gearman workers", e);
             }
-        }
+        }, "Gearman plugin startup");
+        starter.setDaemon(true);
+        starter.start();
+    }
+
+    /*
+     * Whether initWorkers() was called since the workers were last
+     * stopped.  Until then nodes coming online don't start workers.
+     */
+    public boolean isStarted() {
+        return workersStarted;
+    }
 
-        builtInName = hostname;
+    /*
+     * The name of the built-in node, waiting for it to be resolved the
+     * first time.  Must not be called with the handles locked.
+     */
+    private String getBuiltInName() {
+        return BuiltInNameResolver.getInstance().await(BuiltInNameResolver.TIMEOUT_MS);
     }
 
     /*
@@ -94,12 +144,12 @@ public class GearmanProxy {
     protected void testResetHandles() {
         gmwtHandles.clear();
         gewtHandles.clear();
+        retiring.clear();
     }
 
     /*
      * This method initializes the  gearman workers.
      */
-    @SuppressFBWarnings("DCN_NULLPOINTER_EXCEPTION")
     public void initWorkers() {
         /*
          * Purpose here is to create a 1:1 mapping of 'gearman worker':'jenkins
@@ -107,11 +157,48 @@ public class GearmanProxy {
          * jenkins nodes
          */
 
+        /*
+         * Workers are started in stages, see WorkerStartup.
+         */
+        // Set first so that nodes coming online from now on are not missed
+        workersStarted = true;
+        String builtInName = getBuiltInName();
+        List<FunctionPartitioner.Server> partitioned =
+            GearmanPluginConfig.get().getPartitionedServers();
+        if (!partitioned.isEmpty()) {
+            logger.info("---- Functions are partitioned among " + partitioned +
+                        ", not using the configured server " +
+                        GearmanPluginConfig.get().getHost() + ":" +
+                        GearmanPluginConfig.get().getPort());
+        }
+        WorkerStartup startup = WorkerStartup.begin();
+        List<Computer> computers = getComputers();
+
+        Map<Computer, Map<String, GearmanFunctionFactory>> plans = startup.plan(
+            computers, c -> ExecutorWorkerThread.planFunctions(c, builtInName));
+
         /*
          * Spawn management executor worker. This worker does not need any
          * executors. It only needs to work with gearman.
          */
-        createManagementWorker();
+        int workers = createManagementWorker(builtInName, startup);
+        for (Computer computer : computers) {
+            // create a gearman worker for every executor on the slave
+            workers += createExecutorWorkersOnNode(computer, builtInName, null,
+                                                   plans.get(computer), startup);
+        }
+        startup.setExpected(workers);
+
+        logger.debug("---- Num of executors running = " + getNumExecutors());
+    }
+
+    /*
+     * The computers to start workers for: the built-in node, if enabled,
+     * and the agents.
+     */
+    @SuppressFBWarnings("DCN_NULLPOINTER_EXCEPTION")
+    private List<Computer> getComputers() {
+        List<Computer> computers = new ArrayList<Computer>();
 
         /*
          * Spawn executors for the Jenkins built-in node.
@@ -132,7 +219,7 @@ public class GearmanProxy {
         if (builtInNode != null) {
             Computer computer = builtInNode.toComputer();
             if (computer != null) {
-                createExecutorWorkersOnNode(computer);
+                computers.add(computer);
             }
         }
 
@@ -144,13 +231,191 @@ public class GearmanProxy {
             for (Node node : nodes) {
                 Computer computer = node.toComputer();
                 if (computer != null) {
-                    // create a gearman worker for every executor on the slave
-                    createExecutorWorkersOnNode(computer);
+                    computers.add(computer);
                 }
             }
         }
+        return computers;
+    }
 
-        logger.debug("---- Num of executors running = " + getNumExecutors());
+    /*
+     * Move the workers to the server(s) now configured without dropping
+     * the capacity of the nodes: the workers for the new server are
+     * started next to the current ones, and the current workers of a node
+     * are only stopped once all its new workers are ready to grab jobs, or
+     * after the migration timeout.  Running builds are not interrupted,
+     * they report to the server they came from.
+     */
+    public void migrateWorkers() {
+        migrateWorkers(MIGRATION_TIMEOUT_MS);
+    }
+
+    /*
+     * Returns the thread handing the nodes over to their new workers.
+     */
+    Thread migrateWorkers(long timeoutMillis) {
+        // Nodes coming online from now on get workers for the new server
+        workersStarted = true;
+        String builtInName = getBuiltInName();
+        WorkerStartup startup = WorkerStartup.begin();
+        List<Computer> computers = getComputers();
+
+        Map<Computer, Map<String, GearmanFunctionFactory>> plans = startup.plan(
+            computers, c -> ExecutorWorkerThread.planFunctions(c, builtInName));
+
+        List<Handoff> handoffs = new ArrayList<Handoff>();
+        int workers;
+
+        synchronized (gmwtHandles) {
+            List<ManagementWorkerThread> old = new ArrayList<ManagementWorkerThread>();
+            for (ManagementWorkerThread t : gmwtHandles) {
+                if (!retiring.contains(t)) {
+                    old.add(t);
+                }
+            }
+            retiring.addAll(old);
+            workers = createManagementWorker(builtInName, startup);
+            List<ManagementWorkerThread> replacements = new ArrayList<ManagementWorkerThread>();
+            for (ManagementWorkerThread t : gmwtHandles) {
+                if (!retiring.contains(t)) {
+                    replacements.add(t);
+                }
+            }
+            handoffs.add(new Handoff(old, replacements));
+        }
+
+        for (Computer computer : computers) {
+            synchronized (gewtHandles) {
+                List<ExecutorWorkerThread> old = new ArrayList<ExecutorWorkerThread>();
+                for (ExecutorWorkerThread t : gewtHandles) {
+                    if (t.getComputer() == computer && !retiring.contains(t)) {
+                        old.add(t);
+                    }
+                }
+                // They keep serving the node until the new ones are ready
+                retiring.addAll(old);
+                // The old and new workers of a node grab jobs in turn
+                AvailabilityMonitor availability =
+                    old.isEmpty() ? null : old.get(0).getAvailability();
+                workers += createExecutorWorkersOnNode(computer, builtInName, availability,
+                                                       plans.get(computer), startup);
+                List<ExecutorWorkerThread> replacements = new ArrayList<ExecutorWorkerThread>();
+                for (ExecutorWorkerThread t : gewtHandles) {
+                    if (t.getComputer() == computer && !retiring.contains(t)) {
+                        replacements.add(t);
+                    }
+                }
+                if (!old.isEmpty()) {
+                    handoffs.add(new Handoff(old, replacements));
+                }
+            }
+        }
+        synchronized (gewtHandles) {
+            // Workers of nodes which are gone are not replaced
+            List<ExecutorWorkerThread> orphans = new ArrayList<ExecutorWorkerThread>();
+            for (ExecutorWorkerThread t : gewtHandles) {
+                if (!computers.contains(t.getComputer()) && !retiring.contains(t)) {
+                    orphans.add(t);
+                }
+            }
+            retiring.addAll(orphans);
+            handoffs.add(new Handoff(orphans, Collections.<ExecutorWorkerThread>emptyList()));
+        }
+        startup.setExpected(workers);
+
+        logger.info("---- Migrating the workers of " + computers.size() + " nodes to " +
+                    getServers());
+        Thread handoff = new Thread(() -> handOver(handoffs, startup, timeoutMillis),
+                                    "Gearman server migration");
+        handoff.setDaemon(true);
+        handoff.start();
+        return handoff;
+    }
+
+    /*
+     * The workers of a node, or the management workers, and the ones
+     * replacing them.
+     */
+    private static class Handoff {
+        final List<? extends AbstractWorkerThread> old;
+        final List<? extends AbstractWorkerThread> replacements;
+
+        Handoff(List<? extends AbstractWorkerThread> old,
+                List<? extends AbstractWorkerThread> replacements) {
+            this.old = old;
+            this.replacements = replacements;
+        }
+
+        boolean isReady(WorkerStartup startup) {
+            for (AbstractWorkerThread t : replacements) {
+                if (!startup.isReady(t)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void stopOld() {
+            for (AbstractWorkerThread t : old) {
+                t.stopGracefully();
+            }
+        }
+    }
+
+    /*
+     * Stop the old workers of every node once its new workers are ready,
+     * and forget them once their thread exited.
+     */
+    private void handOver(List<Handoff> handoffs, WorkerStartup startup,
+                          long timeoutMillis) {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        List<Handoff> pending = new ArrayList<Handoff>(handoffs);
+        List<AbstractWorkerThread> stopping = new ArrayList<AbstractWorkerThread>();
+        try {
+            while (!pending.isEmpty() || !stopping.isEmpty()) {
+                if (!pending.isEmpty() && System.currentTimeMillis() >= deadline) {
+                    logger.warn("---- " + pending.size() + " nodes had new workers not ready after " +
+                                timeoutMillis + "ms, stopping their old workers anyway");
+                }
+                for (Iterator<Handoff> it = pending.iterator(); it.hasNext(); ) {
+                    Handoff handoff = it.next();
+                    if (handoff.isReady(startup) || System.currentTimeMillis() >= deadline) {
+                        handoff.stopOld();
+                        stopping.addAll(handoff.old);
+                        it.remove();
+                    }
+                }
+                for (Iterator<AbstractWorkerThread> it = stopping.iterator(); it.hasNext(); ) {
+                    AbstractWorkerThread t = it.next();
+                    // Unless stopAll() or stop() took care of it already
+                    if (!t.isAlive() || !retiring.contains(t)) {
+                        forget(t);
+                        it.remove();
+                    }
+                }
+                if (!pending.isEmpty() || !stopping.isEmpty()) {
+                    Thread.sleep(MIGRATION_POLL_MS);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            for (Handoff handoff : pending) {
+                handoff.stopOld();
+            }
+        }
+        // The old workers are gone, so are the servers they used
+        ServerCoordinator.retain(getServersInUse());
+        logger.info("---- Migration to " + getServers() + " done");
+    }
+
+    private void forget(AbstractWorkerThread worker) {
+        synchronized (gewtHandles) {
+            gewtHandles.remove(worker);
+        }
+        synchronized (gmwtHandles) {
+            gmwtHandles.remove(worker);
+        }
+        retiring.remove(worker);
     }
 
     /*
@@ -158,93 +423,363 @@ public class GearmanProxy {
      * executors. It only needs to connect to gearman.
      */
     public void createManagementWorker() {
+        createManagementWorker(getBuiltInName(), null);
+    }
+
+    // Returns the number of workers started
+    private int createManagementWorker(String builtInName, WorkerStartup startup) {
         ManagementWorkerThread gwt;
+        int started = 0;
 
         synchronized (gmwtHandles) {
-            if (!gmwtHandles.isEmpty()) {
-                return;
+            for (ManagementWorkerThread t : gmwtHandles) {
+                if (!retiring.contains(t)) {
+                    return 0;
+                }
             }
 
-            gwt = new ManagementWorkerThread(
-                GearmanPluginConfig.get().getHost(),
-                GearmanPluginConfig.get().getPort(),
-                builtInName + "_manager",
-                builtInName, new NoopAvailabilityMonitor());
-            gmwtHandles.add(gwt);
-            gwt.start();
+            for (FunctionPartitioner.Server server : getServers()) {
+                gwt = new ManagementWorkerThread(
+                    server.getHost(),
+                    server.getPort(),
+                    builtInName + "_manager",
+                    builtInName, new NoopAvailabilityMonitor());
+                gwt.setStartup(startup);
+                gmwtHandles.add(gwt);
+                gwt.start();
+                started++;
+            }
         }
 
         logger.debug("---- Num of executors running = " + getNumExecutors());
+        return started;
     }
 
     /*
      * Spawn workers for each executor on a node.
      */
     public void createExecutorWorkersOnNode(Computer computer) {
+        createExecutorWorkersOnNode(computer, getBuiltInName(), null, null, null);
+    }
+
+    /*
+     * Spawn workers for each executor on a node, registering the planned
+     * functions at first if there is a plan.  The workers share the given
+     * availability monitor, or the one of the node's running workers, or a
+     * new one.  With partitioned functions, workers are only started for
+     * the servers owning some of the node's functions, and not yet served
+     * by its workers.  Returns the number of workers started.
+     */
+    private int createExecutorWorkersOnNode(Computer computer, String builtInName,
+                                            AvailabilityMonitor availability,
+                                            Map<String, GearmanFunctionFactory> plan,
+                                            WorkerStartup startup) {
+        int started = 0;
+        List<FunctionPartitioner.Server> servers = getServers(computer, builtInName, plan);
 
         // find the computer in the executor workers list
         synchronized(gewtHandles) {
             for (ExecutorWorkerThread t : gewtHandles) {
-                if (t.getComputer() == computer) {
-                    logger.debug("---- Executor thread already running for " + computer.getName());
-                    return;
+                if (t.getComputer() == computer && !retiring.contains(t)) {
+                    if (FunctionPartitioner.get() == null) {
+                        servers.clear();
+                        break;
+                    }
+                    for (Iterator<FunctionPartitioner.Server> it = servers.iterator();
+                         it.hasNext(); ) {
+                        if (it.next().is(t.getHost(), t.getPort())) {
+                            it.remove();
+                        }
+                    }
+                    if (availability == null) {
+                        availability = t.getAvailability();
+                    }
                 }
             }
+            if (servers.isEmpty()) {
+                logger.debug("---- No executor thread to start for " + computer.getName());
+                return 0;
+            }
 
-            AvailabilityMonitor availability = new NodeAvailabilityMonitor(computer);
+            if (availability == null) {
+                availability = new NodeAvailabilityMonitor(computer);
+            }
+            String nodeName = getWorkerNodeName(computer, builtInName);
+
+            for (FunctionPartitioner.Server server : servers) {
+                if (NodeWorkerThread.isEnabled()) {
+                    // a single worker grabbing jobs for all executors
+                    ExecutorWorkerThread ewt = new NodeWorkerThread(
+                        server.getHost(),
+                        server.getPort(),
+                        nodeName+"_node",
+                        computer, builtInName, availability);
+
+                    ewt.setPlan(plan);
+                    ewt.setStartup(startup);
+                    ewt.setDraining(draining);
+                    ewt.start();
+                    gewtHandles.add(ewt);
+                    started++;
+                } else {
+                    int executors = computer.getExecutors().size();
+                    for (int i = 0; i < executors; i++) {
+                        startExecutorWorker(server, computer, builtInName, nodeName, i,
+                                            availability, plan, startup);
+                        started++;
+                    }
+                }
+            }
+        }
 
-            int executors = computer.getExecutors().size();
-            for (int i = 0; i < executors; i++) {
-                String nodeName = null;
+        logger.debug("---- Num of executors running = " + getNumExecutors());
+        return started;
+    }
 
-                nodeName = GearmanPluginUtil.getRealName(computer);
-                if (nodeName == "built-in") {
-                    nodeName = builtInName;
-                }
+    /*
+     * Make the number of executor workers of every node match its number
+     * of executors.
+     */
+    public void reconcileExecutorWorkers() {
+        for (Computer computer : Jenkins.get().getComputers()) {
+            reconcileExecutorWorkers(computer);
+        }
+    }
+
+    /*
+     * Make the number of executor workers of a node match its number of
+     * executors, for instance after numExecutors was changed.  Missing
+     * workers are started and surplus ones stopped gracefully, idle ones
+     * first, so running builds are not disturbed.
+     *
+     * @param computer
+     *      The computer to adjust
+     */
+    public void reconcileExecutorWorkers(Computer computer) {
+        String builtInName = getBuiltInName();
+        for (FunctionPartitioner.Server server : getServers()) {
+            reconcileExecutorWorkers(server, computer, builtInName);
+        }
+    }
 
-                ExecutorWorkerThread ewt = new ExecutorWorkerThread(
-                    GearmanPluginConfig.get().getHost(),
-                    GearmanPluginConfig.get().getPort(),
-                    nodeName+"_exec-"+Integer.toString(i),
-                    computer, builtInName, availability);
+    private void reconcileExecutorWorkers(FunctionPartitioner.Server server,
+                                          Computer computer, String builtInName) {
+        List<ExecutorWorkerThread> surplus = new ArrayList<ExecutorWorkerThread>();
 
-                ewt.start();
-                gewtHandles.add(ewt);
+        synchronized(gewtHandles) {
+            List<ExecutorWorkerThread> workers = new ArrayList<ExecutorWorkerThread>();
+            for (ExecutorWorkerThread t : gewtHandles) {
+                if (t.getComputer() == computer && !retiring.contains(t) &&
+                    server.is(t.getHost(), t.getPort())) {
+                    workers.add(t);
+                }
+            }
+            // Nodes without workers are handled when they come online,
+            // and a node-level worker serves any number of executors.
+            if (workers.isEmpty() || workers.get(0) instanceof NodeWorkerThread) {
+                return;
+            }
+
+            int executors = computer.getExecutors().size();
+            if (workers.size() < executors) {
+                String nodeName = getWorkerNodeName(computer, builtInName);
+                Set<String> names = new HashSet<String>();
+                for (ExecutorWorkerThread t : workers) {
+                    names.add(t.getName());
+                }
+                AvailabilityMonitor availability = workers.get(0).getAvailability();
+                // reuse the names of workers stopped earlier
+                int missing = executors - workers.size();
+                for (int index = 0; missing > 0; index++) {
+                    if (!names.contains(nodeName+"_exec-"+Integer.toString(index))) {
+                        startExecutorWorker(server, computer, builtInName, nodeName,
+                                            index, availability, null, null);
+                        missing--;
+                    }
+                }
+            } else if (workers.size() > executors) {
+                int count = workers.size() - executors;
+                // idle workers first, the most recently started first
+                Collections.reverse(workers);
+                for (ExecutorWorkerThread t : workers) {
+                    if (surplus.size() < count && !t.isBusy()) {
+                        surplus.add(t);
+                    }
+                }
+                for (ExecutorWorkerThread t : workers) {
+                    if (surplus.size() < count && !surplus.contains(t)) {
+                        surplus.add(t);
+                    }
+                }
+                gewtHandles.removeAll(surplus);
             }
         }
 
+        for (ExecutorWorkerThread t : surplus) {
+            t.stopGracefully();
+        }
+
         logger.debug("---- Num of executors running = " + getNumExecutors());
+    }
 
+    /*
+     * Worker names are based on the node name, with the built-in node
+     * using the controller host name.
+     */
+    private String getWorkerNodeName(Computer computer, String builtInName) {
+        String nodeName = GearmanPluginUtil.getRealName(computer);
+        if (nodeName == "built-in") {
+            nodeName = builtInName;
+        }
+        return nodeName;
     }
 
     /*
-     * This method stops all gearman workers
+     * The servers workers connect to: the configured server, or all the
+     * servers of the cluster when functions are partitioned among them.
+     */
+    private List<FunctionPartitioner.Server> getServers() {
+        FunctionPartitioner partitioner = FunctionPartitioner.get();
+        if (partitioner != null) {
+            return partitioner.getServers();
+        }
+        return Collections.singletonList(new FunctionPartitioner.Server(
+            GearmanPluginConfig.get().getHost(), GearmanPluginConfig.get().getPort()));
+    }
+
+    /*
+     * The servers the executor workers of a node connect to.  With
+     * partitioned functions, those owning at least one of its functions.
+     */
+    private List<FunctionPartitioner.Server> getServers(Computer computer, String builtInName,
+                                                        Map<String, GearmanFunctionFactory> plan) {
+        FunctionPartitioner partitioner = FunctionPartitioner.get();
+        if (partitioner == null) {
+            return new ArrayList<FunctionPartitioner.Server>(getServers());
+        }
+        if (plan == null) {
+            plan = ExecutorWorkerThread.planFunctions(computer, builtInName);
+        }
+        return partitioner.serversOwning(plan.keySet());
+    }
+
+    /*
+     * The servers workers connect to, including the standby servers they
+     * may fail over to.
+     */
+    private List<FunctionPartitioner.Server> getServersInUse() {
+        List<FunctionPartitioner.Server> servers =
+            new ArrayList<FunctionPartitioner.Server>(getServers());
+        for (FunctionPartitioner.Server server : getServers()) {
+            StandbySession standby = StandbySession.forPrimary(server.getHost(),
+                                                               server.getPort());
+            if (standby != null) {
+                servers.add(new FunctionPartitioner.Server(standby.getHost(),
+                                                           standby.getPort()));
+            }
+        }
+        return servers;
+    }
+
+    // Must be called with gewtHandles locked
+    private void startExecutorWorker(FunctionPartitioner.Server server,
+                                     Computer computer, String builtInName,
+                                     String nodeName, int index,
+                                     AvailabilityMonitor availability,
+                                     Map<String, GearmanFunctionFactory> plan,
+                                     WorkerStartup startup) {
+        ExecutorWorkerThread ewt = new ExecutorWorkerThread(
+            server.getHost(),
+            server.getPort(),
+            nodeName+"_exec-"+Integer.toString(index),
+            computer, builtInName, availability);
+
+        ewt.setPlan(plan);
+        ewt.setStartup(startup);
+        ewt.setDraining(draining);
+        ewt.start();
+        gewtHandles.add(ewt);
+    }
+
+    /*
+     * This method stops all gearman workers, in parallel, and waits for
+     * them to exit until the stop timeout expires.
      */
     public void stopAll() {
-        // stop gearman executors
-        List<AbstractWorkerThread> stopHandles;
+        workersStarted = false;
+        // Workers started again grab jobs
+        draining = false;
+        List<AbstractWorkerThread> stopHandles = new ArrayList<AbstractWorkerThread>();
 
         synchronized(gewtHandles) {
-            stopHandles = new ArrayList<AbstractWorkerThread>(gewtHandles);
+            stopHandles.addAll(gewtHandles);
             gewtHandles.clear();
         }
 
-        for (AbstractWorkerThread wt : stopHandles) { // stop executors
-            wt.stop();
-        }
-
         synchronized(gmwtHandles) {
-            stopHandles = new ArrayList<AbstractWorkerThread>(gmwtHandles);
+            stopHandles.addAll(gmwtHandles);
             gmwtHandles.clear();
         }
+        retiring.clear();
 
-        for (AbstractWorkerThread wt : stopHandles) { // stop executors
-            wt.stop();
+        int running = stopInParallel(stopHandles, STOP_TIMEOUT_MS);
+        if (running > 0) {
+            logger.warn("---- " + running + " of " + stopHandles.size() +
+                        " workers still running " + STOP_TIMEOUT_MS + "ms after being stopped");
         }
+        // No worker waits for a server anymore, stop probing them
+        ServerCoordinator.retain(Collections.<FunctionPartitioner.Server>emptyList());
 
         logger.debug("---- Num of executors running = " + getNumExecutors());
     }
 
+    /*
+     * Stop workers in parallel and wait for their threads to exit, at
+     * most until the timeout expires.
+     *
+     * @return the number of workers still running after the timeout
+     */
+    static int stopInParallel(List<? extends AbstractWorkerThread> workers,
+                              long timeoutMillis) {
+        if (workers.isEmpty()) {
+            return 0;
+        }
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        ExecutorService pool = Executors.newFixedThreadPool(
+            Math.min(STOP_THREADS, workers.size()),
+            new NamingThreadFactory(new DaemonThreadFactory(), "Gearman worker shutdown"));
+        int running = 0;
+        try {
+            for (AbstractWorkerThread wt : workers) {
+                pool.execute(() -> {
+                    try {
+                        wt.stop();
+                    } catch (Exception e) {
+                        logger.warn("---- Exception while stopping worker " + wt.getName(), e);
+                    }
+                });
+            }
+            pool.shutdown();
+            pool.awaitTermination(Math.max(1, deadline - System.currentTimeMillis()),
+                                  TimeUnit.MILLISECONDS);
+            for (AbstractWorkerThread wt : workers) {
+                if (!wt.join(deadline - System.currentTimeMillis())) {
+                    running++;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            for (AbstractWorkerThread wt : workers) {
+                if (wt.isAlive()) {
+                    running++;
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return running;
+    }
+
     /*
      * This method stops all threads on the gewtHandles list that
      * is used to  service the jenkins slave/computer
@@ -268,10 +803,12 @@ public class GearmanProxy {
                 }
             }
         }
+        retiring.removeAll(workers);
 
         for (ExecutorWorkerThread t : workers) {
             t.stop();
         }
+        CustomGearmanFunctionFactory.release(computer);
 
         logger.debug("---- Num of executors running = " + getNumExecutors());
     }
@@ -339,10 +876,70 @@ public class GearmanProxy {
         return null;
     }
 
+    /*
+     * Stop or resume grabbing jobs on all the executor workers, for
+     * instance before restarting Jenkins.  Unlike disabling the plugin
+     * the workers stay connected, so the running builds still report
+     * their results; unlike quieting down Jenkins builds not coming from
+     * gearman are still scheduled.  The management workers keep running.
+     */
+    public void setDraining(boolean draining) {
+        logger.info("---- " + (draining ? "Draining" : "Resuming") + " the gearman workers");
+        synchronized(gewtHandles) {
+            this.draining = draining;
+            for (ExecutorWorkerThread worker : gewtHandles) {
+                worker.setDraining(draining);
+            }
+        }
+    }
+
+    public boolean isDraining() {
+        return draining;
+    }
+
+    /*
+     * The number of gearman jobs still running on the executor workers.
+     */
+    public int getRunningJobs() {
+        int running = 0;
+        synchronized(gewtHandles) {
+            for (ExecutorWorkerThread worker : gewtHandles) {
+                running += worker.getRunningFunctions();
+            }
+        }
+        return running;
+    }
+
+    /*
+     * Whether draining is done: no worker can be assigned a job anymore
+     * and the running ones delivered their results.
+     */
+    public boolean isDrained() {
+        if (!draining) {
+            return false;
+        }
+        synchronized(gewtHandles) {
+            for (ExecutorWorkerThread worker : gewtHandles) {
+                if (!worker.isDrained()) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
     public void registerJobs() {
         synchronized(gewtHandles) {
             for (ExecutorWorkerThread worker : gewtHandles) {
-                worker.registerJobs();
+                if (!retiring.contains(worker)) {
+                    worker.registerJobs();
+                }
+            }
+        }
+        if (FunctionPartitioner.get() != null && workersStarted) {
+            // Functions may now belong to servers a node has no workers for
+            for (Computer computer : getComputers()) {
+                createExecutorWorkersOnNode(computer);
             }
         }
     }
@@ -0,0 +1,54 @@
+/*
+ *
+ * Copyright 2026 Jenkins project contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package hudson.plugins.gearman;
+
+import hudson.Extension;
+import hudson.model.AdministrativeMonitor;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/*
+ * Tells administrators which gearman servers are down, and since when,
+ * instead of every worker logging its own reconnect failures.
+ */
+@Extension
+public class GearmanServerMonitor extends AdministrativeMonitor {
+
+    @Override
+    public String getDisplayName() {
+        return "Gearman server unreachable";
+    }
+
+    @Override
+    public boolean isActivated() {
+        return !getDownServers().isEmpty();
+    }
+
+    public Map<String, ServerCoordinator> getDownServers() {
+        Map<String, ServerCoordinator> down = new TreeMap<String, ServerCoordinator>();
+        for (Map.Entry<String, ServerCoordinator> e :
+                 ServerCoordinator.getServers().entrySet()) {
+            if (e.getValue().getDownSince() != null) {
+                down.put(e.getKey(), e.getValue());
+            }
+        }
+        return down;
+    }
+}
@@ -0,0 +1,336 @@
+/*
+ *
+ * Copyright 2026 Jenkins project contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package hudson.plugins.gearman;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+import jenkins.util.SystemProperties;
+
+import org.gearman.common.GearmanJobServerConnection;
+import org.gearman.common.GearmanPacket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Connection to a gearman server which encodes and decodes packets with
+ * {@link GearmanPacketCodec} instead of the gearman-java implementation,
+ * and owns its socket so options like keep-alive can be set without
+ * reflection, see {@link SocketTuning}.  It also connects to a gearman
+ * server on this machine through its unix domain socket when the host is
+ * a socket path.
+ */
+public class GearmanSocketConnection implements GearmanJobServerConnection {
+
+    private static final Logger logger = LoggerFactory
+            .getLogger(Constants.PLUGIN_LOGGER_NAME);
+
+    private static final boolean ENABLED = SystemProperties.getBoolean(
+        GearmanSocketConnection.class.getName() + ".enabled", false);
+
+    private static final int READ_BUFFER_SIZE = 8192;
+    // Larger packets from the server are taken as malformed rather than
+    // buffered, header included.
+    static final int MAX_PACKET_SIZE = SystemProperties.getInteger(
+        GearmanSocketConnection.class.getName() + ".maxPacketSize", 64 * 1024 * 1024);
+    private static final String UNIX_PREFIX = "unix:";
+
+    private final String host;
+    private final int port;
+    // Resolves the address, if the connection belongs to a worker
+    private volatile ServerCoordinator coordinator = null;
+    private SocketChannel channel;
+    private SelectionKey selectionKey;
+    private ByteBuffer readBuffer;      // kept ready to be read into
+    private final ArrayDeque<ByteBuffer> writeQueue = new ArrayDeque<ByteBuffer>();
+    private ByteBuffer[] gather = new ByteBuffer[16];
+    private long flushes;
+
+    public GearmanSocketConnection(String host, int port) {
+        if (host == null || (port <= 0 && !isUnixSocket(host))) {
+            throw new IllegalArgumentException("Invalid server " + host + ":" + port);
+        }
+        this.host = host;
+        this.port = port;
+    }
+
+    /*
+     * Whether workers should use this connection rather than the one from
+     * gearman-java, with
+     * -Dhudson.plugins.gearman.GearmanSocketConnection.enabled=true.  It is
+     * always used for unix domain sockets.
+     */
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Whether a configured host is the path of the unix domain socket of a
+     * gearman server on this machine, either absolute or prefixed with
+     * "unix:".  The port is ignored for those.
+     */
+    public static boolean isUnixSocket(String host) {
+        return host != null && (host.startsWith(UNIX_PREFIX) || host.startsWith("/"));
+    }
+
+    /**
+     * The address to connect to for a configured host and port.
+     */
+    public static SocketAddress address(String host, int port) {
+        if (isUnixSocket(host)) {
+            String path = host.startsWith(UNIX_PREFIX) ?
+                host.substring(UNIX_PREFIX.length()) : host;
+            return UnixDomainSocketAddress.of(path);
+        }
+        return new InetSocketAddress(host, port);
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    /*
+     * Look the address of the server up through the coordinator of the
+     * worker using this connection, which caches it.
+     */
+    public void setCoordinator(ServerCoordinator coordinator) {
+        this.coordinator = coordinator;
+    }
+
+    public void open() throws IOException {
+        if (isOpen()) {
+            throw new IllegalStateException("Connection " + this + " is already open");
+        }
+        ServerCoordinator c = coordinator;
+        SocketAddress address = c != null ? c.getAddress() : address(host, port);
+        boolean unix = address instanceof UnixDomainSocketAddress;
+        SocketChannel ch = unix ? SocketChannel.open(StandardProtocolFamily.UNIX) :
+            SocketChannel.open();
+        try {
+            SocketTuning.apply(ch, !unix);
+            if (unix) {
+                // Connecting to a local socket does not block
+                ch.connect(address);
+            } else {
+                ch.socket().connect(address, SocketTuning.CONNECT_TIMEOUT_MS);
+            }
+            ch.configureBlocking(false);
+        } catch (IOException e) {
+            ch.close();
+            throw e;
+        }
+        channel = ch;
+        readBuffer = GearmanPacketCodec.acquire(READ_BUFFER_SIZE);
+        logger.debug("---- Connection " + this + " opened");
+    }
+
+    public void close() {
+        if (selectionKey != null) {
+            selectionKey.cancel();
+            selectionKey = null;
+        }
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.warn("Exception closing connection " + this, e);
+            }
+            channel = null;
+        }
+        if (readBuffer != null) {
+            GearmanPacketCodec.release(readBuffer);
+            readBuffer = null;
+        }
+        ByteBuffer frame;
+        while ((frame = writeQueue.poll()) != null) {
+            GearmanPacketCodec.release(frame);
+        }
+    }
+
+    public boolean isOpen() {
+        return channel != null && channel.isOpen();
+    }
+
+    public void registerSelector(Selector selector, int ops) throws IOException {
+        if (!isOpen()) {
+            throw new IllegalStateException("Connection " + this + " is not open");
+        }
+        selectionKey = channel.register(selector, ops);
+    }
+
+    public Selector getSelector() {
+        return selectionKey == null ? null : selectionKey.selector();
+    }
+
+    public SelectionKey getSelectionKey() {
+        return selectionKey;
+    }
+
+    public boolean canRead() {
+        return selectionKey != null && selectionKey.isValid() &&
+            selectionKey.isReadable();
+    }
+
+    public boolean canWrite() {
+        return selectionKey != null && selectionKey.isValid() &&
+            selectionKey.isWritable();
+    }
+
+    /*
+     * Called by the worker loop to decide whether it should wait for the
+     * socket to be writable, so take the opportunity to write out what
+     * is still queued.
+     */
+    public boolean hasBufferedWriteData() {
+        if (!writeQueue.isEmpty() && isOpen()) {
+            try {
+                flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to write to " + this, e);
+            }
+        }
+        return !writeQueue.isEmpty();
+    }
+
+    /*
+     * Queue a packet, it goes out with the next flush() together with the
+     * other packets queued in the mean time.
+     */
+    public void write(GearmanPacket packet) {
+        if (!isOpen()) {
+            throw new IllegalStateException("Connection " + this + " is not open");
+        }
+        writeQueue.add(GearmanPacketCodec.encode(packet));
+    }
+
+    /**
+     * Write the queued packets with a single gathering write, and give the
+     * fully written frames back to the pool.
+     *
+     * @return true if nothing is left to write
+     */
+    public boolean flush() throws IOException {
+        int count = writeQueue.size();
+        if (count == 0) {
+            return true;
+        }
+        gather = writeQueue.toArray(gather);
+        try {
+            channel.write(gather, 0, count);
+            flushes++;
+        } finally {
+            // Do not hold on to pooled buffers
+            Arrays.fill(gather, 0, count, null);
+        }
+        ByteBuffer frame;
+        while ((frame = writeQueue.peek()) != null && !frame.hasRemaining()) {
+            writeQueue.poll();
+            GearmanPacketCodec.release(frame);
+        }
+        return writeQueue.isEmpty();
+    }
+
+    /*
+     * Number of write calls made on the socket, for tests and statistics.
+     */
+    public long getFlushes() {
+        return flushes;
+    }
+
+    /*
+     * Return the next complete packet received from the server, or null if
+     * there is none yet.
+     */
+    public GearmanPacket read() {
+        if (!isOpen()) {
+            throw new IllegalStateException("Connection " + this + " is not open");
+        }
+        GearmanPacket packet = nextPacket();
+        if (packet != null) {
+            return packet;
+        }
+        try {
+            if (channel.read(readBuffer) < 0) {
+                close();
+                throw new UncheckedIOException(new IOException(
+                    "Connection " + this + " closed by server"));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read from " + this, e);
+        }
+        return nextPacket();
+    }
+
+    /*
+     * The session only passes unchecked exceptions on, so read errors and
+     * malformed packets are thrown as UncheckedIOException for the worker
+     * to close the session.
+     */
+    private GearmanPacket nextPacket() {
+        readBuffer.flip();
+        int size;
+        GearmanPacket packet = null;
+        try {
+            size = GearmanPacketCodec.frameSize(readBuffer);
+            if (size > MAX_PACKET_SIZE) {
+                throw new IllegalArgumentException("Packet of " + size + " bytes exceeds " +
+                                                   MAX_PACKET_SIZE);
+            }
+            if (size >= 0 && readBuffer.remaining() >= size) {
+                packet = GearmanPacketCodec.decode(readBuffer);
+            }
+        } catch (IllegalArgumentException e) {
+            close();
+            throw new UncheckedIOException(new IOException(
+                "Malformed packet from " + this, e));
+        }
+        if (packet == null && size > readBuffer.capacity()) {
+            // Make room for a packet bigger than the buffer
+            ByteBuffer bigger = GearmanPacketCodec.acquire(size);
+            bigger.put(readBuffer);
+            GearmanPacketCodec.release(readBuffer);
+            readBuffer = bigger;
+            return null;
+        }
+        readBuffer.compact();
+        return packet;
+    }
+
+    @Override
+    public String toString() {
+        if (isUnixSocket(host)) {
+            return host;
+        }
+        return host + ":" + port;
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ *
+ * Copyright 2026 Jenkins project contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package hudson.plugins.gearman;
+
+import hudson.Extension;
+import hudson.model.ManagementLink;
+
+import java.util.Locale;
+import java.util.Map;
+
+import jenkins.model.Jenkins;
+import net.sf.json.JSONObject;
+
+import org.kohsuke.stapler.HttpResponse;
+import org.kohsuke.stapler.HttpResponses;
+import org.kohsuke.stapler.interceptor.RequirePOST;
+
+/*
+ * Status page of the plugin under Manage Jenkins, showing how the
+ * workers and their gearman servers are doing.
+ */
+@Extension
+public class GearmanStatusLink extends ManagementLink {
+
+    @Override
+    public String getIconFileName() {
+        return "symbol-analytics";
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Gearman Status";
+    }
+
+    @Override
+    public String getDescription() {
+        return "State and latency of the Gearman servers and scheduling of Gearman builds.";
+    }
+
+    @Override
+    public String getUrlName() {
+        return "gearman";
+    }
+
+    @Override
+    public Category getCategory() {
+        return Category.STATUS;
+    }
+
+    public Map<String, LatencyHistogram> getLatencies() {
+        return LatencyHistogram.getServers();
+    }
+
+    public Map<String, ServerCoordinator> getServers() {
+        return ServerCoordinator.getServers();
+    }
+
+    public String getTransport() {
+        return GearmanTransport.forSessions().getName();
+    }
+
+    public String getStandbyServer() {
+        return StandbySession.SERVER;
+    }
+
+    public long getFailovers() {
+        return StandbySession.getFailovers();
+    }
+
+    public WorkerStartup getStartup() {
+        return WorkerStartup.getLast();
+    }
+
+    public RegistrationThrottle getRegistration() {
+        return RegistrationThrottle.getInstance();
+    }
+
+    public SchedulingStatistics getScheduling() {
+        return SchedulingStatistics.getInstance();
+    }
+
+    public int getNumExecutors() {
+        return GearmanProxy.getInstance().getNumExecutors();
+    }
+
+    public GearmanProxy getProxy() {
+        return GearmanProxy.getInstance();
+    }
+
+    /*
+     * Stop grabbing gearman jobs, for instance before restarting Jenkins.
+     */
+    @RequirePOST
+    public HttpResponse doDrain() {
+        Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+        GearmanProxy.getInstance().setDraining(true);
+        return HttpResponses.redirectToDot();
+    }
+
+    @RequirePOST
+    public HttpResponse doResume() {
+        Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+        GearmanProxy.getInstance().setDraining(false);
+        return HttpResponses.redirectToDot();
+    }
+
+    /*
+     * Drain progress for scripts, polled until drained is true.
+     */
+    public HttpResponse doDrainStatus() {
+        Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+        GearmanProxy proxy = GearmanProxy.getInstance();
+        JSONObject status = new JSONObject();
+        status.put("draining", proxy.isDraining());
+        status.put("runningJobs", proxy.getRunningJobs());
+        status.put("drained", proxy.isDrained());
+        return HttpResponses.okJSON(status);
+    }
+
+    // Used by the jelly view to show fractional numbers
+    public String format(double value) {
+        return String.format(Locale.ROOT, "%.2f", value);
+    }
+}
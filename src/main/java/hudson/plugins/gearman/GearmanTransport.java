@@ -0,0 +1,166 @@
+/*
+ *
+ * Copyright 2026 Jenkins project contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package hudson.plugins.gearman;
+
+import hudson.ExtensionList;
+import hudson.ExtensionPoint;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+
+import org.gearman.common.GearmanJobServerConnection;
+
+/**
+ * How workers talk to gearman servers: creating the connections of their
+ * sessions and writing out what the sessions handed to them.
+ *
+ * This part does not depend on how a transport waits for IO.  The
+ * sessions of gearman-java are driven through a java.nio.channels.Selector
+ * though, so workers need a {@link SelectorTransport}.  A transport with
+ * another readiness model, like one on Netty's native epoll, can be
+ * picked but workers fall back to the plugin's transport until their
+ * sessions can be driven without a Selector.  On Linux the JDK selector
+ * is epoll based already.
+ *
+ * The transport is picked by name with the
+ * hudson.plugins.gearman.GearmanTransport.name system property.  Without
+ * it the gearman-java connection is used, unless the plugin's own one was
+ * enabled with hudson.plugins.gearman.GearmanSocketConnection.enabled=true.
+ */
+public abstract class GearmanTransport implements ExtensionPoint {
+
+    public static final String NAME = SystemProperties.getString(
+        GearmanTransport.class.getName() + ".name");
+
+    /*
+     * The name to select this transport with.
+     */
+    public abstract String getName();
+
+    /*
+     * Whether this transport can be used on this machine.
+     */
+    public boolean isAvailable() {
+        return true;
+    }
+
+    /*
+     * Whether this transport connects to unix domain sockets.
+     */
+    public boolean supportsUnixSockets() {
+        return false;
+    }
+
+    /*
+     * A connection to a gearman server, opened by the session using it.
+     */
+    public abstract GearmanJobServerConnection createConnection(String host, int port);
+
+    /*
+     * Whether the connection was created by this transport.
+     */
+    public abstract boolean isConnectionOf(GearmanJobServerConnection connection);
+
+    /*
+     * Write out what the session handed to a connection since the last
+     * flush, for transports which don't write as the session drives IO.
+     */
+    public void flush(GearmanJobServerConnection connection) throws IOException {
+    }
+
+    /*
+     * Have a connection look up its server's address through the
+     * coordinator of its worker, for transports which resolve it
+     * themselves.
+     */
+    public void setCoordinator(GearmanJobServerConnection connection,
+                               ServerCoordinator coordinator) {
+    }
+
+    /*
+     * All the transports, the ones of the plugin when Jenkins is not
+     * running.
+     */
+    public static List<GearmanTransport> all() {
+        if (Jenkins.getInstanceOrNull() == null) {
+            return Arrays.<GearmanTransport>asList(new NioTransport(), new LegacyTransport());
+        }
+        return ExtensionList.lookup(GearmanTransport.class);
+    }
+
+    /*
+     * The transport picked.
+     */
+    public static GearmanTransport get() {
+        String name = NAME;
+        if (name == null) {
+            name = GearmanSocketConnection.isEnabled() ? NioTransport.NAME : LegacyTransport.NAME;
+        }
+        GearmanTransport fallback = null;
+        for (GearmanTransport transport : all()) {
+            if (transport.getName().equals(name) && transport.isAvailable()) {
+                return transport;
+            }
+            if (transport.getName().equals(NioTransport.NAME)) {
+                fallback = transport;
+            }
+        }
+        return fallback != null ? fallback : new NioTransport();
+    }
+
+    /*
+     * The transport worker sessions use: the one picked if it is driven
+     * through a Selector, the plugin's one otherwise.
+     */
+    public static SelectorTransport forSessions() {
+        GearmanTransport transport = get();
+        if (transport instanceof SelectorTransport) {
+            return (SelectorTransport) transport;
+        }
+        return new NioTransport();
+    }
+
+    /*
+     * The transport for worker sessions to connect to a server with.
+     */
+    public static SelectorTransport forServer(String host) {
+        SelectorTransport transport = forSessions();
+        if (GearmanSocketConnection.isUnixSocket(host) && !transport.supportsUnixSockets()) {
+            return new NioTransport();
+        }
+        return transport;
+    }
+
+    /*
+     * The transport which created a connection.  Connections of no known
+     * transport write as the session drives IO, like the ones of
+     * gearman-java.
+     */
+    public static GearmanTransport of(GearmanJobServerConnection connection) {
+        for (GearmanTransport transport : all()) {
+            if (transport.isConnectionOf(connection)) {
+                return transport;
+            }
+        }
+        return new LegacyTransport();
+    }
+}
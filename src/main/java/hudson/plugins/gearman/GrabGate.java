@@ -0,0 +1,163 @@
+/*
+ *
+ * Copyright 2026 Jenkins project contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package hudson.plugins.gearman;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import jenkins.util.SystemProperties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Limits how many idle workers with the same function set sleep at the
+ * Gearman server at any time.
+ *
+ * gearmand sends a NOOP to every sleeping worker able to run a job as soon
+ * as one is submitted.  With hundreds of identical workers, all of them
+ * wake up and send GRAB_JOB (and contend on the node availability lock)
+ * for a single job.  When herd suppression is enabled, only
+ * {@code maxSleepers} workers per function set send PRE_SLEEP; the others
+ * are parked locally without anything outstanding at the server.  Each
+ * time a sleeper is assigned a job, the longest parked worker is released
+ * to grab in turn, and a parked worker releases itself after
+ * {@code parkTimeoutMillis} in case the sleepers stay busy.
+ *
+ * Disabled unless hudson.plugins.gearman.GrabGate.maxSleepers is set.
+ */
+public class GrabGate {
+
+    private static final Logger logger = LoggerFactory
+            .getLogger(Constants.PLUGIN_LOGGER_NAME);
+
+    static final int MAX_SLEEPERS = SystemProperties.getInteger(
+            GrabGate.class.getName() + ".maxSleepers", 0);
+
+    static final long PARK_TIMEOUT_MS = SystemProperties.getLong(
+            GrabGate.class.getName() + ".parkTimeoutMillis", 30000L);
+
+    private static final Map<Set<String>, GrabGate> gates =
+        new HashMap<Set<String>, GrabGate>();
+
+    private final Set<String> functions;
+    private final Set<MyGearmanWorkerImpl> sleepers = new HashSet<MyGearmanWorkerImpl>();
+    private final ArrayDeque<MyGearmanWorkerImpl> parked = new ArrayDeque<MyGearmanWorkerImpl>();
+    private final int maxSleepers;
+
+    GrabGate(Set<String> functions, int maxSleepers) {
+        this.functions = functions;
+        this.maxSleepers = maxSleepers;
+    }
+
+    public static boolean isEnabled() {
+        return MAX_SLEEPERS > 0;
+    }
+
+    /*
+     * Return the gate shared by all workers registering exactly these
+     * functions, or null if herd suppression is disabled.
+     */
+    static GrabGate forFunctions(Set<String> functions) {
+        if (!isEnabled() || functions.isEmpty()) {
+            return null;
+        }
+        synchronized (gates) {
+            GrabGate gate = gates.get(functions);
+            if (gate == null) {
+                Set<String> key = new HashSet<String>(functions);
+                gate = new GrabGate(key, MAX_SLEEPERS);
+                gates.put(key, gate);
+            }
+            return gate;
+        }
+    }
+
+    /*
+     * Called when a worker got NO_JOB and wants to send PRE_SLEEP.
+     *
+     * @return true if the worker may sleep at the server, false if it has
+     *      been parked and must wait for unpark()
+     */
+    synchronized boolean enterSleep(MyGearmanWorkerImpl worker) {
+        parked.remove(worker);
+        if (sleepers.contains(worker) || sleepers.size() < maxSleepers) {
+            sleepers.add(worker);
+            return true;
+        }
+        parked.addLast(worker);
+        logger.debug("---- Worker " + worker + " parked; " + sleepers.size() +
+                     " worker(s) already sleeping for the same functions");
+        return false;
+    }
+
+    /*
+     * Called when a sleeping worker was woken up by a NOOP.
+     */
+    synchronized void leaveSleep(MyGearmanWorkerImpl worker) {
+        sleepers.remove(worker);
+    }
+
+    /*
+     * Called when a worker was assigned a job: there may be more work
+     * queued, so let the next parked worker try to grab it.
+     */
+    void jobAssigned(MyGearmanWorkerImpl worker) {
+        MyGearmanWorkerImpl next;
+        synchronized (this) {
+            sleepers.remove(worker);
+            next = parked.pollFirst();
+        }
+        if (next != null) {
+            logger.debug("---- Worker " + worker + " got a job, releasing " + next);
+            next.unpark();
+        }
+    }
+
+    /*
+     * Forget about a worker which is reconnecting, stopping or changing
+     * its function set.
+     */
+    void remove(MyGearmanWorkerImpl worker) {
+        boolean empty;
+        synchronized (this) {
+            sleepers.remove(worker);
+            parked.remove(worker);
+            empty = sleepers.isEmpty() && parked.isEmpty();
+        }
+        if (empty) {
+            synchronized (gates) {
+                if (gates.get(functions) == this) {
+                    gates.remove(functions);
+                }
+            }
+        }
+    }
+
+    synchronized int getSleepers() {
+        return sleepers.size();
+    }
+
+    synchronized int getParked() {
+        return parked.size();
+    }
+}
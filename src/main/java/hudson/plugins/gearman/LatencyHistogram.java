@@ -0,0 +1,105 @@
+/*
+ *
+ * Copyright 2026 Jenkins project contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package hudson.plugins.gearman;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Distribution of the ECHO round trip times to a gearman server, as
+ * measured by the worker heartbeats.
+ *
+ * Samples are counted in power of two buckets of microseconds, which is
+ * precise enough to tell a healthy server from a struggling one and keeps
+ * recording cheap.
+ */
+public class LatencyHistogram {
+
+    private static final int BUCKETS = 32;
+    private static final Map<String, LatencyHistogram> servers =
+        new ConcurrentHashMap<String, LatencyHistogram>();
+
+    // Bucket i counts samples below 2^i microseconds
+    private final long[] buckets = new long[BUCKETS];
+    private long count = 0;
+    private long totalMicros = 0;
+    private long maxMicros = 0;
+
+    /**
+     * The histogram of a server, by host and port.
+     */
+    public static LatencyHistogram forServer(String server) {
+        return servers.computeIfAbsent(server, s -> new LatencyHistogram());
+    }
+
+    /**
+     * The histograms of all servers, sorted by server.
+     */
+    public static Map<String, LatencyHistogram> getServers() {
+        return new TreeMap<String, LatencyHistogram>(servers);
+    }
+
+    public synchronized void record(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+        buckets[bucket]++;
+        count++;
+        totalMicros += micros;
+        maxMicros = Math.max(maxMicros, micros);
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized double getMeanMillis() {
+        return count == 0 ? 0 : totalMicros / 1000.0 / count;
+    }
+
+    public synchronized double getMaxMillis() {
+        return maxMicros / 1000.0;
+    }
+
+    /**
+     * Upper bound of the given percentile (0 to 100), in milliseconds.
+     */
+    public synchronized double getPercentileMillis(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(count * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets[i];
+            if (seen >= rank) {
+                return Math.min((1L << i) / 1000.0, getMaxMillis());
+            }
+        }
+        return getMaxMillis();
+    }
+
+    public double getMedianMillis() {
+        return getPercentileMillis(50);
+    }
+
+    public double getP99Millis() {
+        return getPercentileMillis(99);
+    }
+}
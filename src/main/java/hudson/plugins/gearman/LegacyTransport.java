@@ -0,0 +1,47 @@
+/*
+ *
+ * Copyright 2026 Jenkins project contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package hudson.plugins.gearman;
+
+import hudson.Extension;
+
+import org.gearman.common.GearmanJobServerConnection;
+
+/**
+ * The default transport: the connections of gearman-java, with keep-alive
+ * enabled.
+ */
+@Extension
+public class LegacyTransport extends SelectorTransport {
+
+    public static final String NAME = "gearman-java";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public GearmanJobServerConnection createConnection(String host, int port) {
+        return new GearmanNIOJobServerConnectionImpl(host, port);
+    }
+
+    @Override
+    public boolean isConnectionOf(GearmanJobServerConnection connection) {
+        return connection instanceof GearmanNIOJobServerConnectionImpl;
+    }
+}
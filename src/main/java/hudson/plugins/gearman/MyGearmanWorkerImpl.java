@@ -25,9 +25,11 @@
 package hudson.plugins.gearman;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -39,13 +41,15 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import jenkins.util.SystemProperties;
+
+import org.gearman.client.GearmanIOEventListener;
 import org.gearman.common.Constants;
 import org.gearman.common.GearmanException;
 import org.gearman.common.GearmanJobServerConnection;
-import org.gearman.common.GearmanJobServerIpConnectionFactory;
 import org.gearman.common.GearmanJobServerSession;
-import org.gearman.common.GearmanNIOJobServerConnectionFactory;
 import org.gearman.common.GearmanPacket;
 import org.gearman.common.GearmanPacket.DataComponentName;
 import org.gearman.common.GearmanPacketImpl;
@@ -71,19 +75,79 @@ public class MyGearmanWorkerImpl implements GearmanSessionEventHandler {
         IDLE, RUNNING, SHUTTINGDOWN
     }
     private static final String DESCRIPION_PREFIX = "GearmanWorker";
-    private ConcurrentLinkedQueue<GearmanSessionEvent> eventList = null;
-    private Selector ioAvailable = null;
+    // Maximum number of pending session events, see EventRingBuffer.
+    static final int EVENT_CAPACITY = SystemProperties.getInteger(
+        MyGearmanWorkerImpl.class.getName() + ".eventCapacity", 64);
+    private final EventRingBuffer eventList = new EventRingBuffer(EVENT_CAPACITY);
+    private volatile Selector ioAvailable = null;
     private static final org.slf4j.Logger LOG =  LoggerFactory.getLogger(
             Constants.GEARMAN_WORKER_LOGGER_NAME);
+    // The worker whose run loop is on the current thread
+    private static final ThreadLocal<MyGearmanWorkerImpl> current =
+        new ThreadLocal<MyGearmanWorkerImpl>();
     private String id;
-    private Map<String, FunctionDefinition> functionMap;
-    private State state;
+    private Map<String, GearmanFunctionFactory> functionMap;
+    // Ids in the FunctionNameTable of the functions registered with the
+    // server, each holding a reference to its id
+    private BitSet functionIds = new BitSet();
+    private volatile State state;
     private ExecutorService executorService;
     private GearmanJobServerSession session = null;
-    private final GearmanJobServerIpConnectionFactory connFactory = new GearmanNIOJobServerConnectionFactory();
+    private GearmanJobServerConnection connection = null;
+    // The transport of the connection, which flushes its writes
+    private GearmanTransport transport = null;
+    // Reused for every NOOP and NO_JOB of the session, whose packets carry
+    // no data.
+    private GearmanSessionEvent noopEvent = null;
+    private GearmanSessionEvent noJobEvent = null;
+    private SessionRequest grabJob = null;
+    private SessionRequest grabJobUniq = null;
+    private SessionRequest preSleep = null;
     private volatile boolean jobUniqueIdRequired = false;
     private FunctionRegistry functionRegistry;
     private AvailabilityMonitor availability;
+    private GrabGate grabGate = null;
+    private volatile boolean parked = false;
+    private long parkedSince = 0;
+    // Only used with an executor service, see SessionRelay.
+    private final ConcurrentLinkedQueue<GearmanPacket> relayedPackets =
+        new ConcurrentLinkedQueue<GearmanPacket>();
+    private final SessionRelay sessionRelay = new SessionRelay();
+    private boolean grabDeferred = false;
+    // Jobs count as running until their last packet was written out
+    private final AtomicInteger runningFunctions = new AtomicInteger();
+    // Functions done whose last packet may not be written out yet
+    private int finishedFunctions = 0;
+    // Relayed after the packets of a function running on the executor
+    // service, once it is done.
+    private static final GearmanPacket FUNCTION_DONE = new GearmanPacketImpl(
+        GearmanPacketMagic.REQ, GearmanPacketType.NOOP, new byte[0]);
+    // A GRAB_JOB is about to be sent, waiting for the node, or was sent
+    // and its reply not handled yet
+    private volatile boolean grabPending = false;
+    private final SessionHeartbeat heartbeat = new SessionHeartbeat(
+        SessionHeartbeat.INTERVAL_MS, SessionHeartbeat.MAX_MISSED);
+    private final RegistrationThrottle throttle = RegistrationThrottle.getInstance();
+    // Some CAN_DO or CANT_DO packets are still to be sent, see registerFunctions()
+    private boolean registrationPending = false;
+    // Set to stop grabbing jobs while the running ones complete
+    private volatile boolean draining = false;
+    // Whether functionIds is all the server knows about, which is only sure
+    // after a RESET_ABILITIES on the current connection.
+    private boolean abilitiesKnown = false;
+    // Shared with the other workers of the server, null when not coordinated.
+    private ServerCoordinator coordinator = null;
+    // Session to a secondary server taking over when the session drops.
+    private StandbySession standby = null;
+    // Functions the worker wants registered, see StandbySession.  Holds
+    // references to its ids as well.
+    private BitSet wantedFunctionIds = new BitSet();
+    // Told when the worker is first ready to grab a job, then cleared
+    private WorkerStartup startup = null;
+    private Object startupKey = null;
+
+    // How often to retry a GRAB_JOB deferred because the node was busy.
+    private static final long GRAB_RETRY_MS = 500;
 
     class GrabJobEventHandler implements GearmanServerResponseHandler {
 
@@ -96,31 +160,62 @@ public class MyGearmanWorkerImpl implements GearmanSessionEventHandler {
         }
 
         public void handleEvent(GearmanPacket event) throws GearmanException {
-            handleSessionEvent(new GearmanSessionEvent(event, session));
+            handleSessionEvent(sessionEvent(event, session));
             isDone = true;
         }
 
         public boolean isDone() {
             return isDone;
         }
+
+        void reset() {
+            isDone = false;
+        }
     }
 
-    static class FunctionDefinition {
+    /*
+     * A request sent over and over on a session, like GRAB_JOB.  Its task
+     * and handler are reused once the server answered the previous one, so
+     * the idle cycle does not allocate them every time.
+     */
+    class SessionRequest {
 
-        private final long timeout;
-        private final GearmanFunctionFactory factory;
+        private final GearmanJobServerSession session;
+        private final GearmanPacket packet;
+        private GrabJobEventHandler handler = null;
+        private GearmanTask task = null;
 
-        FunctionDefinition(long timeout, GearmanFunctionFactory factory) {
-            this.timeout = timeout;
-            this.factory = factory;
+        SessionRequest(GearmanJobServerSession session, GearmanPacket packet) {
+            this.session = session;
+            this.packet = packet;
         }
 
-        long getTimeout() {
-            return timeout;
+        void submit(GearmanJobServerSession s) {
+            if (s != session) {
+                s.submitTask(new GearmanTask(new GrabJobEventHandler(s), packet));
+                return;
+            }
+            if (handler != null && handler.isDone()) {
+                handler.reset();
+            } else {
+                // First request, or the previous one is still unanswered
+                handler = new GrabJobEventHandler(session);
+                task = new GearmanTask(handler, packet);
+            }
+            session.submitTask(task);
         }
+    }
+
+    /*
+     * Functions running on the executor service report their progress and
+     * results from their own thread.  The session is only ever driven by
+     * the worker thread, so hand the packets over to it.
+     */
+    class SessionRelay implements GearmanIOEventListener {
 
-        GearmanFunctionFactory getFactory() {
-            return factory;
+        public void handleGearmanIOEvent(GearmanPacket p) {
+            relayedPackets.add(p);
+            ioAvailable.wakeup();
         }
     }
 
@@ -153,24 +248,58 @@ public class MyGearmanWorkerImpl implements GearmanSessionEventHandler {
     }
 
     public void reconnect() {
-        LOG.debug("---- Worker " + this + " starting reconnect for " + session.toString());
+        LOG.debug("---- Worker {} starting reconnect for {}", this, session);
         // In case we held the availability lock earlier, release it.
         availability.unlock(this);
+        leaveGrabGate();
+        if (standby != null && standby.isConnected() &&
+            standby.confirmAlive(StandbySession.ECHO_TIMEOUT_MS)) {
+            promoteStandby();
+            return;
+        }
+        if (coordinator != null) {
+            // Don't keep a coordinator closed while we were connected
+            setCoordinator(coordinator.current());
+            try {
+                // Wait in slices so that a graceful stop is noticed
+                if (!coordinator.awaitTurn(1000)) {
+                    return;
+                }
+            } catch (InterruptedException e) {
+                LOG.warn("---- Worker " + this + " interrupted while waiting for " +
+                         coordinator);
+                return;
+            }
+        }
         try {
             session.initSession(ioAvailable, this);
+            if (coordinator != null) {
+                coordinator.connectSucceeded();
+            }
+            heartbeat.reset(System.nanoTime());
             if (id != null) {
                 sendToAll(new GearmanPacketImpl(GearmanPacketMagic.REQ,
                                                 GearmanPacketType.SET_CLIENT_ID,
                                                 ByteUtils.toUTF8Bytes(id)));
             }
-            // Reset events so that we don't process events from the old
+            // Drop events so that we don't process events from the old
             // connection.
-            eventList = new ConcurrentLinkedQueue<GearmanSessionEvent>();
+            eventList.advanceEpoch();
+            dropRelayedPackets();
+            grabDeferred = false;
+            grabPending = false;
             // this will cause a grab-job event
             functionRegistry.setUpdated(true);
             // Make sure we reset the function list
             functionMap.clear();
+            FunctionNameTable.release(functionIds);
+            abilitiesKnown = false;
+            throttle.cancel(this);
+            registrationPending = false;
         } catch (IOException e) {
+            if (coordinator != null) {
+                coordinator.connectFailed(e);
+            }
             try {
                 Thread.sleep(2000);
             } catch (InterruptedException e1) {
@@ -178,7 +307,43 @@ public class MyGearmanWorkerImpl implements GearmanSessionEventHandler {
                 return;
             }
         }
-        LOG.debug("---- Worker " + this + " ending reconnect for " + session.toString());
+        LOG.debug("---- Worker {} ending reconnect for {}", this, session);
+    }
+
+    /*
+     * Make the standby session the session of this worker, instead of
+     * connecting to the server again.
+     */
+    private void promoteStandby() {
+        StandbySession promoted = standby;
+        LOG.info("---- Worker " + this + " failing over from " + connection +
+                 " to standby " + promoted);
+        standby = promoted.promote();
+        Selector old = ioAvailable;
+        ioAvailable = promoted.getSelector();
+        try {
+            old.close();
+        } catch (IOException e) {
+            LOG.warn("---- Worker " + this + " failed to close IO selector", e);
+        }
+        connection = promoted.getConnection();
+        transport = promoted.getTransport();
+        session = promoted.getSession();
+        sessionChanged();
+        setCoordinator(ServerCoordinator.forServer(promoted.getHost(), promoted.getPort()));
+        heartbeat.reset(System.nanoTime());
+        eventList.advanceEpoch();
+        dropRelayedPackets();
+        grabDeferred = false;
+        grabPending = false;
+        // The standby already registered the functions, registerFunctions()
+        // only sends what it missed.  Its ids come with their references.
+        FunctionNameTable.release(functionIds);
+        functionIds = promoted.getFunctionIds();
+        abilitiesKnown = promoted.isAbilitiesKnown();
+        throttle.cancel(this);
+        registrationPending = false;
+        functionRegistry.setUpdated(true);
     }
 
     public MyGearmanWorkerImpl(AvailabilityMonitor availability) {
@@ -188,15 +353,14 @@ public class MyGearmanWorkerImpl implements GearmanSessionEventHandler {
     public MyGearmanWorkerImpl(ExecutorService executorService,
                                AvailabilityMonitor availability) {
         this.availability = availability;
-        eventList = new ConcurrentLinkedQueue<GearmanSessionEvent>();
         id = DESCRIPION_PREFIX + ":" + Thread.currentThread().getId();
-        functionMap = new HashMap<String, FunctionDefinition>();
+        functionMap = new HashMap<String, GearmanFunctionFactory>();
         state = State.IDLE;
         this.executorService = executorService;
         functionRegistry = new FunctionRegistry();
 
         try {
-            ioAvailable = Selector.open();
+            ioAvailable = GearmanTransport.forSessions().openSelector();
         } catch (IOException ioe) {
             LOG.warn("---- Worker " + this + " failed to open IO selector", ioe);
         }
@@ -208,7 +372,7 @@ public class MyGearmanWorkerImpl implements GearmanSessionEventHandler {
     }
 
     public void setFunctions(Set<GearmanFunctionFactory> functions) {
-        LOG.debug("---- Worker " + this + " registering " + functions.size() + " functions");
+        LOG.debug("---- Worker {} registering {} functions", this, functions.size());
         functionRegistry.setFunctions(functions);
         ioAvailable.wakeup();
     }
@@ -239,85 +403,146 @@ public class MyGearmanWorkerImpl implements GearmanSessionEventHandler {
             return;
         }
 
-        HashMap<String, FunctionDefinition> newFunctionMap = new HashMap<String, FunctionDefinition>();
+        HashMap<String, GearmanFunctionFactory> newFunctionMap = new HashMap<String, GearmanFunctionFactory>();
+        BitSet newFunctionIds = new BitSet();
+        for (GearmanFunctionFactory factory: functions) {
+            int id = FunctionNameTable.acquire(factory.getFunctionName());
+            if (newFunctionIds.get(id)) {
+                FunctionNameTable.release(id);
+            }
+            newFunctionIds.set(id);
+            newFunctionMap.put(FunctionNameTable.name(id), factory);
+        }
+        // While draining the server is told we can't do anything, but jobs
+        // it assigned before that are still run.
+        if (draining) {
+            FunctionNameTable.release(newFunctionIds);
+        }
         // If we have no previous data then reset abilities to be sure the
         // gearman server has no stale data that we don't know about.
         // Or if we have no functions anymore just reset everything, we don't
         // need a CANT_DO per lost function.
-        if (functions.isEmpty() || functionMap.isEmpty()) {
-            sendToAll(new GearmanPacketImpl(GearmanPacketMagic.REQ,
-                      GearmanPacketType.RESET_ABILITIES, new byte[0]));
-            session.driveSessionIO();
-            LOG.debug("---- Worker " + this + " reset functions");
-            if (!isRunning()) {
-                // Ensure we start from scratch on reconnection.
-                functionMap.clear();
-                return;
-            }
+        boolean reset = newFunctionIds.isEmpty() || !abilitiesKnown;
+        BitSet added = (BitSet) newFunctionIds.clone();
+        BitSet removed = (BitSet) functionIds.clone();
+        if (reset) {
+            removed.clear();
+        } else {
+            added.andNot(functionIds);
+            removed.andNot(newFunctionIds);
         }
-        // Now only update if we have data to update.
-        if (!functions.isEmpty()) {
-            for (GearmanFunctionFactory factory: functions) {
-                FunctionDefinition def = new FunctionDefinition(0, factory);
-                newFunctionMap.put(factory.getFunctionName(), def);
-                if (!functionMap.containsKey(factory.getFunctionName())) {
-                    sendToAll(generateCanDoPacket(def));
-                    session.driveSessionIO();
-                    if (!isRunning()) {
-                        // Ensure we start from scratch on reconnection.
-                        functionMap.clear();
-                        return;
-                    }
-
-                    LOG.debug("---- Worker " + this + " registered function " +
-                              factory.getFunctionName());
-                }
-                functionMap.remove(factory.getFunctionName());
-            }
-            for (FunctionDefinition def: functionMap.values()) {
-                sendToAll(generateCantDoPacket(def));
-                session.driveSessionIO();
-                if (!isRunning()) {
-                    // Ensure we start from scratch on reconnection.
-                    functionMap.clear();
-                    return;
-                }
-
-                LOG.debug("---- Worker " + this + " unregistered function " +
-                          def.getFactory().getFunctionName());
-            }
+        int packets = (reset ? 1 : 0) + removed.cardinality() + added.cardinality();
+        // What is not granted now is sent on a later pass of the run loop,
+        // functionIds keeps track of what the server knows so far.
+        int granted = throttle.acquire(this, packets, !isBusy());
+        boolean sent = granted > 0 || packets == 0;
+        registrationPending = granted < packets;
+        if (registrationPending) {
+            functionRegistry.setUpdated(true);
+        }
+        if (reset && granted > 0) {
+            sendToAll(GearmanPacketCodec.RESET_ABILITIES);
+            LOG.debug("---- Worker {} reset functions", this);
+            FunctionNameTable.release(functionIds);
+            abilitiesKnown = true;
+            granted--;
+        }
+        for (int id = removed.nextSetBit(0); id >= 0 && granted > 0;
+             id = removed.nextSetBit(id + 1), granted--) {
+            sendToAll(FunctionNameTable.cantDo(id));
+            LOG.debug("---- Worker {} unregistered function {}", this,
+                      FunctionNameTable.name(id));
+            functionIds.clear(id);
+            FunctionNameTable.release(id);
+        }
+        for (int id = added.nextSetBit(0); id >= 0 && granted > 0;
+             id = added.nextSetBit(id + 1), granted--) {
+            sendToAll(FunctionNameTable.canDo(id));
+            FunctionNameTable.acquire(id);
+            functionIds.set(id);
+            LOG.debug("---- Worker {} registered function {}", this,
+                      FunctionNameTable.name(id));
+        }
+        // The packets go out together at the end of the loop iteration.
+        session.driveSessionIO();
+        if (!isRunning()) {
+            // Ensure we start from scratch on reconnection.
+            functionMap.clear();
+            FunctionNameTable.release(functionIds);
+            FunctionNameTable.release(newFunctionIds);
+            abilitiesKnown = false;
+            return;
         }
         functionMap = newFunctionMap;
+        FunctionNameTable.release(wantedFunctionIds);
+        wantedFunctionIds = newFunctionIds;
+        if (draining) {
+            leaveGrabGate();
+        } else {
+            updateGrabGate();
+        }
 
         GearmanSessionEvent nextEvent = eventList.peek();
-        if (nextEvent == null ||
-            nextEvent.getPacket().getPacketType() != GearmanPacketType.NOOP) {
+        if (sent && (nextEvent == null ||
+            nextEvent.getPacket().getPacketType() != GearmanPacketType.NOOP)) {
             // Simulate a NOOP packet which will kick off a GRAB_JOB cycle
             // if we're sleeping.  If we get a real NOOP in the mean time,
             // it should be fine because GearmanJobServerSession ignores a
             // NOOP if PRE_SLEEP is not on the stack.
-            GearmanPacket p = new GearmanPacketImpl(GearmanPacketMagic.RES,
-                                                    GearmanPacketType.NOOP, new byte[0]);
-            GearmanSessionEvent event = new GearmanSessionEvent(p, session);
-            session.handleSessionEvent(event);
+            session.handleSessionEvent(noopEvent);
         }
     }
 
+    private void updateGrabGate() {
+        GrabGate gate = GrabGate.forFunctions(functionMap.keySet());
+        if (gate != grabGate) {
+            // A parked worker gets kicked by the NOOP which follows a
+            // function update, so it can simply forget the old gate.
+            leaveGrabGate();
+            grabGate = gate;
+        }
+    }
+
+    /*
+     * The gate drops itself once its last worker left, so forget it too:
+     * updateGrabGate() joins the gate current workers share again.
+     */
+    private void leaveGrabGate() {
+        if (grabGate != null) {
+            grabGate.remove(this);
+            grabGate = null;
+        }
+        parked = false;
+    }
+
+    /*
+     * Called by our GrabGate, from another worker's thread, when this
+     * parked worker should try to grab a job again.
+     */
+    void unpark() {
+        parked = false;
+        enqueueNoopEvent();
+        ioAvailable.wakeup();
+    }
+
     public void enqueueNoopEvent() {
         // Simulate a NOOP packet which will kick off a GRAB_JOB cycle.
         // This unconditionally enqueues the NOOP which will send a GRAB_JOB
         // and should only be used when you know you need to send a GRAB_JOB.
         // Cases like worker start, post function run, post failure.
-        GearmanPacket p = new GearmanPacketImpl(GearmanPacketMagic.RES,
-                                                GearmanPacketType.NOOP, new byte[0]);
-        GearmanSessionEvent event = new GearmanSessionEvent(p, session);
-        enqueueEvent(event);
+        enqueueEvent(noopEvent);
     }
 
+    /*
+     * The IO steps of the run loop close the session on IOException, and
+     * on the unchecked exceptions connections throw from the methods
+     * which can not throw one: UncheckedIOException from our own and
+     * GearmanException from the gearman-java connection.
+     */
     public void work() {
         GearmanSessionEvent event = null;
         GearmanFunction function = null;
-        LOG.debug("---- Worker " + this + " starting work");
+        LOG.debug("---- Worker {} starting work", this);
 
         if (!state.equals(State.IDLE)) {
             throw new IllegalStateException("Can not call work while worker " +
@@ -325,15 +550,16 @@ public class MyGearmanWorkerImpl implements GearmanSessionEventHandler {
         }
 
         state = State.RUNNING;
+        current.set(this);
         // When we first start working we will already be initialized so must
         // enqueue a Noop event to trigger GRAB_JOB here.
         enqueueNoopEvent();
 
         while (isRunning()) {
-            LOG.debug("---- Worker " + this + " top of run loop");
+            LOG.debug("---- Worker {} top of run loop", this);
 
             if (!session.isInitialized()) {
-                LOG.debug("---- Worker " + this + " run loop reconnect");
+                LOG.debug("---- Worker {} run loop reconnect", this);
                 reconnect();
                 enqueueNoopEvent();
                 // Restart loop to check we connected.
@@ -341,9 +567,9 @@ public class MyGearmanWorkerImpl implements GearmanSessionEventHandler {
             }
 
             try {
-                LOG.debug("---- Worker " + this + " run loop register functions");
+                LOG.debug("---- Worker {} run loop register functions", this);
                 registerFunctions();
-            } catch (IOException io) {
+            } catch (IOException | UncheckedIOException | GearmanException io) {
                 LOG.warn("---- Worker " + this + " receieved IOException while" +
                          " registering functions", io);
                 session.closeSession();
@@ -352,7 +578,21 @@ public class MyGearmanWorkerImpl implements GearmanSessionEventHandler {
 
             if (!isRunning() || !session.isInitialized()) continue;
 
+            if (standby != null) {
+                standby.maintain(wantedFunctionIds);
+            }
+
+            relayPackets();
+
             event = eventList.poll();
+            if (eventList.hasOverflowed()) {
+                // We lost events we can not do without, start over with a
+                // fresh session.
+                LOG.warn("---- Worker " + this + " event buffer overflowed, " +
+                         "resetting session " + session);
+                session.closeSession();
+                continue;
+            }
             function = processSessionEvent(event);
 
             if (!isRunning() || !session.isInitialized()) continue;
@@ -360,8 +600,10 @@ public class MyGearmanWorkerImpl implements GearmanSessionEventHandler {
             // For the time being we will execute the jobs synchronously
             // in the future, I expect to change this.
             if (function != null) {
-                LOG.debug("---- Worker " + this + " executing function");
+                LOG.debug("---- Worker {} executing function", this);
                 submitFunction(function);
+                // Counted as running from now on
+                grabPending = false;
                 // Send another grab_job on the next loop
                 enqueueNoopEvent();
                 // Skip IO as submitFunction drives the IO for function
@@ -371,55 +613,235 @@ public class MyGearmanWorkerImpl implements GearmanSessionEventHandler {
 
             if (!isRunning() || !session.isInitialized()) continue;
 
-            // Run IO, select waiting for ability to read and/or write
-            // then read and/or write.
-            int interestOps = SelectionKey.OP_READ;
-            if (session.sessionHasDataToWrite()) {
-                interestOps |= SelectionKey.OP_WRITE;
+            // Send everything queued during this iteration at once.
+            try {
+                flushWrites();
+                countFlushedFunctions();
+            } catch (IOException | UncheckedIOException | GearmanException io) {
+                LOG.warn("---- Worker " + this + " receieved IOException while" +
+                         " writing to session " + session, io);
+                session.closeSession();
+                continue;
             }
-            session.getSelectionKey().interestOps(interestOps);
 
+            // Run IO, select waiting for ability to read and/or write
+            // then read and/or write.
             try {
-                ioAvailable.select();
-            } catch (IOException io) {
+                int interestOps = SelectionKey.OP_READ;
+                if (session.sessionHasDataToWrite()) {
+                    interestOps |= SelectionKey.OP_WRITE;
+                }
+                session.getSelectionKey().interestOps(interestOps);
+                ioAvailable.select(selectTimeout());
+            } catch (IOException | UncheckedIOException | GearmanException io) {
                 LOG.warn("---- Worker " + this + " receieved IOException while" +
                          " selecting for IO", io);
                 session.closeSession();
                 continue;
             }
 
-            if (ioAvailable.selectedKeys().contains(session.getSelectionKey())) {
-                LOG.debug("---- Worker " + this + " received input in run loop");
+            // Remove the key so that the next select reports fresh
+            // readiness instead of leaving it selected forever.
+            SelectionKey key = session.getSelectionKey();
+            if (ioAvailable.selectedKeys().remove(key)) {
+                LOG.debug("---- Worker {} received input in run loop", this);
+                if (key.isValid() && key.isReadable()) {
+                    heartbeat.activity(System.nanoTime());
+                }
                 if (!session.isInitialized()) {
-                    LOG.debug("---- Worker " + this + " session is no longer initialized");
+                    LOG.debug("---- Worker {} session is no longer initialized", this);
                     continue;
                 }
                 try {
                     session.driveSessionIO();
-                } catch (IOException io) {
+                    countFlushedFunctions();
+                } catch (IOException | UncheckedIOException | GearmanException io) {
                     LOG.warn("---- Worker " + this + " received IOException while driving" +
                             " IO on session " + session, io);
                     session.closeSession();
                     continue;
                 }
             }
-            LOG.debug("---- Worker " + this + " run loop finished driving session io");
+            LOG.debug("---- Worker {} run loop finished driving session io", this);
+
+            switch (heartbeat.check(System.nanoTime())) {
+                case SEND_ECHO:
+                    LOG.debug("---- Worker {} sending heartbeat", this);
+                    sendToAll(new GrabJobEventHandler(session), GearmanPacketCodec.ECHO_REQ);
+                    break;
+                case RECONNECT:
+                    LOG.warn("---- Worker " + this + " missed " + heartbeat.getMissed() +
+                             " heartbeats from " + connection + ", reconnecting");
+                    session.closeSession();
+                    continue;
+                default:
+                    break;
+            }
+
+            if (grabDeferred) {
+                grabDeferred = false;
+                enqueueNoopEvent();
+            }
+
+            if (parked && System.currentTimeMillis() - parkedSince >= GrabGate.PARK_TIMEOUT_MS) {
+                // The sleeping workers stayed busy for too long, try to
+                // grab on our own.
+                LOG.debug("---- Worker {} park timeout expired", this);
+                leaveGrabGate();
+                updateGrabGate();
+                enqueueNoopEvent();
+            }
         }
 
+        current.remove();
         shutDownWorker(true);
     }
 
+    /*
+     * How long the run loop may block waiting for IO, 0 meaning forever.
+     */
+    private long selectTimeout() {
+        long timeout = 0;
+        if (registrationPending) {
+            timeout = RegistrationThrottle.RETRY_MS;
+        } else if (grabDeferred) {
+            timeout = GRAB_RETRY_MS;
+        } else if (parked) {
+            timeout = GrabGate.PARK_TIMEOUT_MS;
+        }
+        if (heartbeat.isEnabled()) {
+            long due = heartbeat.millisUntilDue(System.nanoTime());
+            timeout = timeout == 0 ? due : Math.min(timeout, due);
+        }
+        if (standby != null) {
+            long due = standby.millisUntilDue();
+            timeout = timeout == 0 ? due : Math.min(timeout, due);
+        }
+        return timeout;
+    }
+
+    /**
+     * Write out the packets the session handed to the connection since the
+     * last flush, for transports which coalesce writes.  Connections from
+     * gearman-java write each packet as the session drives its IO, so
+     * there is nothing to do for them.
+     */
+    public void flushWrites() throws IOException {
+        if (transport != null) {
+            transport.flush(connection);
+        }
+    }
+
+    /*
+     * Hand the packets of asynchronously running functions to the session.
+     */
+    private void relayPackets() {
+        GearmanPacket p;
+        while ((p = relayedPackets.poll()) != null) {
+            if (p == FUNCTION_DONE) {
+                finishedFunctions++;
+            } else {
+                session.handleGearmanIOEvent(p);
+            }
+        }
+    }
+
+    /*
+     * The functions done stop counting as running once the session wrote
+     * out their last packet.
+     */
+    private void countFlushedFunctions() {
+        if (finishedFunctions > 0 && !session.sessionHasDataToWrite()) {
+            runningFunctions.addAndGet(-finishedFunctions);
+            finishedFunctions = 0;
+        }
+    }
+
+    /*
+     * Results of jobs assigned on the old connection can not be delivered
+     * anymore, the server hands those jobs to another worker.
+     */
+    private void dropRelayedPackets() {
+        runningFunctions.addAndGet(-finishedFunctions);
+        finishedFunctions = 0;
+        GearmanPacket p;
+        while ((p = relayedPackets.poll()) != null) {
+            if (p == FUNCTION_DONE) {
+                runningFunctions.decrementAndGet();
+                continue;
+            }
+            byte[] handle = p.getDataComponentValue(DataComponentName.JOB_HANDLE);
+            LOG.warn("---- Worker " + this + " dropped " + p.getPacketType() +
+                     " of job " + (handle == null ? "?" : ByteUtils.fromUTF8Bytes(handle)) +
+                     " assigned on the lost session");
+        }
+    }
+
     private void sendGrabJob(GearmanJobServerSession s) throws InterruptedException {
+        // Not drained while waiting for the node, a job may follow
+        grabPending = true;
         // If we can get the lock, this will prevent other workers and
-        // Jenkins itself from scheduling builds on this node.  If we
-        // can not get the lock, this will wait for it.
-        availability.lock(this);
+        // Jenkins itself from scheduling builds on this node.
+        try {
+            if (executorService == null) {
+                // If we can not get the lock, this will wait for it.
+                availability.lock(this);
+            } else if (!availability.tryLock(this)) {
+                // Jobs run asynchronously, so the run loop has to keep
+                // delivering their results: retry later instead of waiting.
+                grabPending = false;
+                grabDeferred = true;
+                return;
+            }
+        } catch (InterruptedException e) {
+            grabPending = false;
+            if (draining) {
+                return;
+            }
+            throw e;
+        }
+        if (draining) {
+            // Draining started while we waited for the node
+            LOG.debug("---- Worker {} draining, not grabbing a job", this);
+            availability.unlock(this);
+            grabPending = false;
+            return;
+        }
 
-        GearmanTask grabJobTask = new GearmanTask(
-            new GrabJobEventHandler(s),
-            new GearmanPacketImpl(GearmanPacketMagic.REQ,
-                getGrabJobPacketType(), new byte[0]));
-        s.submitTask(grabJobTask);
+        if (startup != null && !registrationPending) {
+            startup.workerReady(startupKey);
+            startup = null;
+        }
+        grabPending = true;
+        getGrabJob().submit(s);
+    }
+
+    /*
+     * Create the shared events and requests of the idle cycle for a new
+     * session.
+     */
+    private void sessionChanged() {
+        noopEvent = new GearmanSessionEvent(GearmanPacketCodec.NOOP, session);
+        noJobEvent = new GearmanSessionEvent(GearmanPacketCodec.NO_JOB, session);
+        grabJob = new SessionRequest(session, GearmanPacketCodec.GRAB_JOB);
+        grabJobUniq = new SessionRequest(session, GearmanPacketCodec.GRAB_JOB_UNIQ);
+        preSleep = new SessionRequest(session, GearmanPacketCodec.PRE_SLEEP);
+    }
+
+    /*
+     * Wrap a packet received by a session in an event, reusing the shared
+     * events for the packets of the idle cycle.
+     */
+    private GearmanSessionEvent sessionEvent(GearmanPacket p, GearmanJobServerSession s) {
+        if (s == session) {
+            GearmanPacketType t = p.getPacketType();
+            if (t == GearmanPacketType.NOOP) {
+                return noopEvent;
+            } else if (t == GearmanPacketType.NO_JOB) {
+                return noJobEvent;
+            }
+        }
+        return new GearmanSessionEvent(p, s);
     }
 
     public void handleSessionEvent(GearmanSessionEvent event)
@@ -430,8 +852,8 @@ public class MyGearmanWorkerImpl implements GearmanSessionEventHandler {
     public void enqueueEvent(GearmanSessionEvent event) {
         // Enqueue in a thread safe manner. Events will
         // be pulled off and processed serially in this workers
-        // main thread.
-        eventList.add(event);
+        // main thread.  An overflow is handled by the run loop.
+        eventList.offer(event);
     }
 
     private GearmanFunction processSessionEvent(GearmanSessionEvent event)
@@ -440,19 +862,35 @@ public class MyGearmanWorkerImpl implements GearmanSessionEventHandler {
             GearmanPacket p = event.getPacket();
             GearmanJobServerSession s = event.getSession();
             GearmanPacketType t = p.getPacketType();
-            LOG.debug("---- Worker " + this + " handling session event" +
-                      " ( Session = " + s + " Event = " + t + " )");
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("---- Worker " + this + " handling session event" +
+                          " ( Session = " + s + " Event = " + t + " )");
+            }
             switch (t) {
                 case JOB_ASSIGN:
                     //TODO Figure out what the right behavior is if JobUUIDRequired was false when we submitted but is now true
-                    LOG.debug("---- Worker " + this + " received job assignment");
+                    LOG.debug("---- Worker {} received job assignment", this);
+                    if (grabGate != null) {
+                        grabGate.jobAssigned(this);
+                    }
                     return addNewJob(event);
                 case JOB_ASSIGN_UNIQ:
                     //TODO Figure out what the right behavior is if JobUUIDRequired was true when we submitted but is now false
-                    LOG.debug("---- Worker " + this + " received unique job assignment");
+                    LOG.debug("---- Worker {} received unique job assignment", this);
+                    if (grabGate != null) {
+                        grabGate.jobAssigned(this);
+                    }
                     return addNewJob(event);
                 case NOOP:
-                    LOG.debug("---- Worker " + this + " sending grab job after wakeup");
+                    if (grabGate != null) {
+                        grabGate.leaveSleep(this);
+                    }
+                    parked = false;
+                    if (draining) {
+                        LOG.debug("---- Worker {} draining, not grabbing a job", this);
+                        break;
+                    }
+                    LOG.debug("---- Worker {} sending grab job after wakeup", this);
                     try {
                         sendGrabJob(s);
                     } catch (InterruptedException e) {
@@ -461,16 +899,31 @@ public class MyGearmanWorkerImpl implements GearmanSessionEventHandler {
                     }
                     break;
                 case NO_JOB:
+                    grabPending = false;
                     // We didn't get a job, so allow other workers or
                     // Jenkins to schedule on this node.
                     availability.unlock(this);
-                    LOG.debug("---- Worker " + this + " sending pre sleep after no_job");
-                    GearmanTask preSleepTask = new GearmanTask(new GrabJobEventHandler(s),
-                            new GearmanPacketImpl(GearmanPacketMagic.REQ,
-                            GearmanPacketType.PRE_SLEEP, new byte[0]));
-                    s.submitTask(preSleepTask);
+                    if (grabGate != null) {
+                        // Mark ourselves parked first so that an unpark()
+                        // racing with enterSleep() is not lost.
+                        parkedSince = System.currentTimeMillis();
+                        parked = true;
+                        if (!grabGate.enterSleep(this)) {
+                            // Enough identical workers are already sleeping
+                            // at the server; wait until the gate releases us.
+                            LOG.debug("---- Worker {} parked after no_job", this);
+                            break;
+                        }
+                        parked = false;
+                    }
+                    LOG.debug("---- Worker {} sending pre sleep after no_job", this);
+                    preSleep.submit(s);
                     break;
                 case ECHO_RES:
+                    long rtt = heartbeat.echoReceived(System.nanoTime());
+                    if (rtt >= 0) {
+                        LatencyHistogram.forServer(String.valueOf(connection)).record(rtt);
+                    }
                     break;
                 case OPTION_RES:
                     break;
@@ -486,8 +939,44 @@ public class MyGearmanWorkerImpl implements GearmanSessionEventHandler {
         return null;
     }
 
+    /*
+     * Coordinate the reconnects of this worker with the other workers of
+     * the server.  The connection resolves the server's address through
+     * it as well.
+     */
+    public void setCoordinator(ServerCoordinator coordinator) {
+        this.coordinator = coordinator;
+        if (connection != null && coordinator != null) {
+            transport.setCoordinator(connection, coordinator);
+        }
+    }
+
+    StandbySession getStandby() {
+        return standby;
+    }
+
+    /*
+     * Keep a warm standby session to a secondary server, must be called
+     * before addServer().
+     */
+    public void setStandby(StandbySession standby) {
+        this.standby = standby;
+        if (standby != null) {
+            standby.setWorker(this);
+        }
+    }
+
+    /*
+     * Report to a staged startup when this worker is first ready to grab
+     * a job, as the given key.
+     */
+    public void setStartup(WorkerStartup startup, Object key) {
+        this.startup = startup;
+        this.startupKey = key;
+    }
+
     public boolean addServer(String host, int port) {
-        return addServer(connFactory.createConnection(host, port));
+        return addServer(GearmanTransport.forServer(host).createConnection(host, port));
     }
 
     public boolean addServer(GearmanJobServerConnection conn)
@@ -501,7 +990,13 @@ public class MyGearmanWorkerImpl implements GearmanSessionEventHandler {
             return true;
         }
 
+        connection = conn;
+        transport = GearmanTransport.of(conn);
+        if (coordinator != null) {
+            transport.setCoordinator(connection, coordinator);
+        }
         session = new GearmanJobServerSession(conn);
+        sessionChanged();
 
         reconnect();
 
@@ -529,10 +1024,77 @@ public class MyGearmanWorkerImpl implements GearmanSessionEventHandler {
         state = State.SHUTTINGDOWN;
     }
 
+    /*
+     * Stop without interrupting the worker thread: a running function
+     * completes and reports its result, an idle worker leaves its run loop
+     * right away.
+     */
+    public void stopGracefully() {
+        stop();
+        ioAvailable.wakeup();
+        // In case we are waiting for the node lock
+        availability.wake();
+    }
+
+    /*
+     * Whether this worker is currently running a function.
+     */
+    public boolean isBusy() {
+        return runningFunctions.get() > 0;
+    }
+
+    public int getRunningFunctions() {
+        return runningFunctions.get();
+    }
+
+    /*
+     * Whether draining is done: no job can be assigned to this worker
+     * anymore and the ones it ran delivered their results.
+     */
+    public boolean isDrained() {
+        return draining && !grabPending && runningFunctions.get() == 0;
+    }
+
+    /*
+     * Stop or resume grabbing jobs.  While draining the functions are
+     * unregistered from the server, which then stops assigning jobs to
+     * this worker, but the connection is kept so that the running
+     * functions still deliver their results.
+     */
+    public void setDraining(boolean draining) {
+        if (this.draining == draining) {
+            return;
+        }
+        LOG.info("---- Worker " + this + (draining ? " draining" : " resuming"));
+        this.draining = draining;
+        // Register the current functions again, or none while draining
+        functionRegistry.setUpdated(true);
+        // In case we are waiting for the node lock
+        availability.wake();
+        Selector selector = ioAvailable;
+        if (selector != null) {
+            selector.wakeup();
+        }
+    }
+
+    public boolean isDraining() {
+        return draining;
+    }
+
     public List<Exception> shutdown() {
         return shutDownWorker(false);
     }
 
+    /**
+     * The worker whose run loop is on the calling thread, which is the
+     * one that received the job a function is created for.
+     *
+     * @return the worker, or null outside of a worker's run loop
+     */
+    public static MyGearmanWorkerImpl current() {
+        return current.get();
+    }
+
     public boolean isRunning() {
         return state.equals(State.RUNNING);
     }
@@ -545,18 +1107,6 @@ public class MyGearmanWorkerImpl implements GearmanSessionEventHandler {
         return jobUniqueIdRequired;
     }
 
-    private GearmanPacket generateCanDoPacket(FunctionDefinition def) {
-        GearmanPacketType pt = GearmanPacketType.CAN_DO;
-        byte[] data = ByteUtils.toUTF8Bytes(def.getFactory().getFunctionName());
-        return new GearmanPacketImpl(GearmanPacketMagic.REQ, pt, data);
-    }
-
-    private GearmanPacket generateCantDoPacket(FunctionDefinition def) {
-        GearmanPacketType pt = GearmanPacketType.CANT_DO;
-        byte[] data = ByteUtils.toUTF8Bytes(def.getFactory().getFunctionName());
-        return new GearmanPacketImpl(GearmanPacketMagic.REQ, pt, data);
-    }
-
     private void sendToAll(GearmanPacket p) {
         sendToAll(null, p);
     }
@@ -575,6 +1125,14 @@ public class MyGearmanWorkerImpl implements GearmanSessionEventHandler {
 
         ArrayList<Exception> exceptions = new ArrayList<Exception>();
 
+        leaveGrabGate();
+        throttle.cancel(this);
+        if (standby != null) {
+            standby.close();
+        }
+        FunctionNameTable.release(functionIds);
+        FunctionNameTable.release(wantedFunctionIds);
+
         // This gives any jobs in flight a chance to complete
         if (executorService != null) {
             if (completeTasks) {
@@ -591,7 +1149,7 @@ public class MyGearmanWorkerImpl implements GearmanSessionEventHandler {
             LOG.warn("---- Worker " + this + " encountered IOException while closing selector: ", ioe);
         }
         state = State.IDLE;
-        LOG.debug("---- Worker " + this + " completed shutdown");
+        LOG.debug("---- Worker {} completed shutdown", this);
 
         return exceptions;
     }
@@ -608,54 +1166,89 @@ public class MyGearmanWorkerImpl implements GearmanSessionEventHandler {
                 GearmanPacket.DataComponentName.DATA);
         unique = p.getDataComponentValue(DataComponentName.UNIQUE_ID);
         functionName = ByteUtils.fromUTF8Bytes(functionNameBytes);
-        FunctionDefinition def = functionMap.get(functionName);
-        if (def == null) {
+        GearmanFunctionFactory factory = functionMap.get(functionName);
+        GearmanFunction function = null;
+        if (factory != null) {
+            try {
+                function = factory.getFunction();
+            } catch (RuntimeException e) {
+                LOG.error("---- Worker " + this + " failed to create function " +
+                          functionName, e);
+            }
+        }
+        if (function == null) {
             GearmanTask gsr = new GearmanTask(
                     new GearmanPacketImpl(GearmanPacketMagic.REQ,
                     GearmanPacketType.WORK_FAIL, handle));
             session.submitTask(gsr);
             availability.unlock(this);
+            grabPending = false;
             enqueueNoopEvent();
-        } else {
-            GearmanFunction function = def.getFactory().getFunction();
-            function.setData(data);
-            function.setJobHandle(handle);
+            return null;
+        }
+        function.setData(data);
+        function.setJobHandle(handle);
+        if (executorService == null) {
             function.registerEventListener(session);
-            if (unique != null && unique.length > 0) {
-                function.setUniqueId(unique);
-            }
-            return function;
+        } else {
+            function.registerEventListener(sessionRelay);
         }
-        return null;
+        if (unique != null && unique.length > 0) {
+            function.setUniqueId(unique);
+        }
+        return function;
     }
 
-    private void submitFunction(GearmanFunction fun) {
+    private void submitFunction(final GearmanFunction fun) {
+        runningFunctions.incrementAndGet();
+        boolean submitted = false;
         try {
             if (executorService == null) {
-                fun.call();
+                try {
+                    fun.call();
+                } finally {
+                    finishedFunctions++;
+                }
             } else {
-                executorService.submit(fun);
+                executorService.submit(() -> {
+                    try {
+                        return fun.call();
+                    } finally {
+                        sessionRelay.handleGearmanIOEvent(FUNCTION_DONE);
+                    }
+                });
             }
+            submitted = true;
 
             // We should have submitted either a WORK_EXCEPTION, COMPLETE,
-            // or FAIL; make sure it gets sent.
+            // or FAIL; make sure it gets sent before the next grab, which
+            // may wait for the node.
             session.driveSessionIO();
-        } catch (IOException io) {
+            flushWrites();
+            countFlushedFunctions();
+        } catch (IOException | UncheckedIOException | GearmanException io) {
             LOG.warn("---- Worker " + this + " receieved IOException while" +
                      " running function",io);
             session.closeSession();
         } catch (Exception e) {
             LOG.warn("---- Worker " + this + " exception while executing function " + fun.getName(), e);
         }
-        // Unlock the monitor for this worker
-        availability.unlock(this);
+        if (!submitted && executorService != null) {
+            // It will never report being done
+            runningFunctions.decrementAndGet();
+        }
+        if (executorService == null) {
+            // Unlock the monitor for this worker.  Functions running on
+            // the executor service release it once their build started.
+            availability.unlock(this);
+        }
     }
 
-    private GearmanPacketType getGrabJobPacketType() {
+    private SessionRequest getGrabJob() {
         if (jobUniqueIdRequired) {
-            return GearmanPacketType.GRAB_JOB_UNIQ;
+            return grabJobUniq;
         }
-        return GearmanPacketType.GRAB_JOB;
+        return grabJob;
     }
 
 }
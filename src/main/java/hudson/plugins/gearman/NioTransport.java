@@ -0,0 +1,68 @@
+/*
+ *
+ * Copyright 2026 Jenkins project contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package hudson.plugins.gearman;
+
+import hudson.Extension;
+
+import java.io.IOException;
+
+import org.gearman.common.GearmanJobServerConnection;
+
+/**
+ * The plugin's transport: {@link GearmanSocketConnection}, which coalesces
+ * writes and reads into buffers of the {@link GearmanPacketCodec} pool.
+ */
+@Extension
+public class NioTransport extends SelectorTransport {
+
+    public static final String NAME = "nio";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean supportsUnixSockets() {
+        return true;
+    }
+
+    @Override
+    public GearmanJobServerConnection createConnection(String host, int port) {
+        return new GearmanSocketConnection(host, port);
+    }
+
+    @Override
+    public boolean isConnectionOf(GearmanJobServerConnection connection) {
+        return connection instanceof GearmanSocketConnection;
+    }
+
+    @Override
+    public void setCoordinator(GearmanJobServerConnection connection,
+                               ServerCoordinator coordinator) {
+        ((GearmanSocketConnection) connection).setCoordinator(coordinator);
+    }
+
+    @Override
+    public void flush(GearmanJobServerConnection connection) throws IOException {
+        GearmanSocketConnection conn = (GearmanSocketConnection) connection;
+        if (conn.isOpen()) {
+            conn.flush();
+        }
+    }
+}
@@ -49,40 +49,46 @@ public class NodeAvailabilityMonitor implements AvailabilityMonitor {
         throws InterruptedException
     {
         logger.debug("AvailabilityMonitor lock request: " + worker);
-        while (true) {
-            boolean busy = false;
+        while (!tryLock(worker)) {
+            if (!worker.isRunning()) {
+                // The worker is being stopped while waiting for the node.
+                throw new InterruptedException("Worker " + worker + " is stopping");
+            }
+            if (worker.isDraining()) {
+                // It won't grab a job after all
+                throw new InterruptedException("Worker " + worker + " is draining");
+            }
+            synchronized(this) {
+                // We get synchronous notification when a
+                // build finishes, but there are lots of other
+                // reasons circumstances could change (adding
+                // an executor, canceling shutdown, etc), so
+                // we slowly busy wait to cover all those
+                // reasons.
+                this.wait(5000);
+            }
+        }
+    }
 
-            // Synchronize on the Jenkins queue so that Jenkins is
-            // unable to schedule builds while we try to acquire the
-            // lock.
-            synchronized(queue) {
-                if (workerHoldingLock == null) {
-                    if (computer.countIdle() == 0) {
-                        // If there are no idle executors, we can not
-                        // schedule a build.
-                        busy = true;
-                    } else if (jenkins.isQuietingDown()) {
-                        busy = true;
-                    } else {
-                        logger.debug("AvailabilityMonitor got lock: " + worker);
-                        workerHoldingLock = worker;
-                        return;
-                    }
-                } else {
-                    busy = true;
-                }
+    public boolean tryLock(MyGearmanWorkerImpl worker) {
+        // Synchronize on the Jenkins queue so that Jenkins is
+        // unable to schedule builds while we try to acquire the
+        // lock.
+        synchronized(queue) {
+            if (workerHoldingLock != null) {
+                return false;
+            }
+            if (computer.countIdle() == 0) {
+                // If there are no idle executors, we can not
+                // schedule a build.
+                return false;
             }
-            if (busy) {
-                synchronized(this) {
-                    // We get synchronous notification when a
-                    // build finishes, but there are lots of other
-                    // reasons circumstances could change (adding
-                    // an executor, canceling shutdown, etc), so
-                    // we slowly busy wait to cover all those
-                    // reasons.
-                    this.wait(5000);
-                }
+            if (jenkins.isQuietingDown()) {
+                return false;
             }
+            logger.debug("AvailabilityMonitor got lock: " + worker);
+            workerHoldingLock = worker;
+            return true;
         }
     }
 
@@ -0,0 +1,67 @@
+/*
+ *
+ * Copyright 2026 Jenkins project contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package hudson.plugins.gearman;
+
+import hudson.model.Computer;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import jenkins.util.SystemProperties;
+
+
+/*
+ * This is the thread to run a node-level gearman worker.
+ *
+ * Instead of one worker (and one connection to the Gearman server) per
+ * executor, a single worker registers the functions of the node and grabs
+ * a job whenever the node has an idle executor.  Jobs run concurrently on
+ * the worker's executor service, so the build can end up on any free
+ * executor of the node.
+ *
+ * Enabled with the hudson.plugins.gearman.NodeWorkerThread.enabled system
+ * property.
+ */
+public class NodeWorkerThread extends ExecutorWorkerThread {
+
+    static final boolean ENABLED = SystemProperties.getBoolean(
+            NodeWorkerThread.class.getName() + ".enabled");
+
+    public NodeWorkerThread(String host, int port, String name,
+                            Computer computer, String builtInName,
+                            AvailabilityMonitor availability) {
+        super(host, port, name, computer, builtInName, availability);
+    }
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    @Override
+    protected MyGearmanWorkerImpl createWorker() {
+        // The availability monitor only lets us grab a job when the node
+        // has an idle executor, which bounds the number of running jobs.
+        ExecutorService executorService = Executors.newCachedThreadPool(
+            new NamingThreadFactory(new DaemonThreadFactory(),
+                                    "Gearman worker " + getName()));
+        return new MyGearmanWorkerImpl(executorService, getAvailability());
+    }
+}
@@ -24,6 +24,10 @@ public class NoopAvailabilityMonitor implements AvailabilityMonitor {
     public void lock(MyGearmanWorkerImpl worker) {
     }
 
+    public boolean tryLock(MyGearmanWorkerImpl worker) {
+        return true;
+    }
+
     public void unlock(MyGearmanWorkerImpl worker) {
     }
 
@@ -0,0 +1,158 @@
+/*
+ *
+ * Copyright 2026 Jenkins project contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package hudson.plugins.gearman;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import jenkins.util.SystemProperties;
+
+/**
+ * Limits the rate at which all the workers together send CAN_DO and
+ * CANT_DO packets.
+ *
+ * After a gearman server restart every worker registers all of its
+ * functions again, which adds up to functions x workers packets sent at
+ * the same instant.  With this throttle the workers send what they are
+ * granted and resume with the rest on the next pass of their run loop.
+ * Workers whose executor is idle are served first, so that idle capacity
+ * becomes usable as soon as possible; busy workers only get packets when
+ * no idle worker is waiting.
+ */
+public class RegistrationThrottle {
+
+    // 0 disables the throttle
+    public static final int PACKETS_PER_SECOND = SystemProperties.getInteger(
+        RegistrationThrottle.class.getName() + ".packetsPerSecond", 20000);
+    // How soon a worker which was not granted everything tries again.
+    public static final long RETRY_MS = 50;
+
+    private static final RegistrationThrottle instance =
+        new RegistrationThrottle(PACKETS_PER_SECOND);
+
+    private static final class Backlog {
+        int packets;
+        boolean idle;
+    }
+
+    private final int rate;
+    private double tokens;
+    private long refilledAt;
+    private final Map<Object, Backlog> backlogs = new IdentityHashMap<Object, Backlog>();
+    private int idleBacklogs = 0;
+    private long pendingPackets = 0;
+    private long sentPackets = 0;
+
+    RegistrationThrottle(int packetsPerSecond) {
+        this.rate = packetsPerSecond;
+        // Allow a burst of one second worth of packets
+        this.tokens = packetsPerSecond;
+        this.refilledAt = System.nanoTime();
+    }
+
+    public static RegistrationThrottle getInstance() {
+        return instance;
+    }
+
+    public boolean isEnabled() {
+        return rate > 0;
+    }
+
+    /*
+     * Ask to send some registration packets for a worker.
+     *
+     * @return how many of them the worker may send now, the worker should
+     *     ask again for the rest after RETRY_MS.
+     */
+    public synchronized int acquire(Object worker, int packets, boolean idle) {
+        if (!isEnabled()) {
+            sentPackets += packets;
+            return packets;
+        }
+        refill(System.nanoTime());
+        setBacklog(worker, packets, idle);
+        if (packets == 0 || (!idle && idleBacklogs > 0)) {
+            return 0;
+        }
+        int granted = (int) Math.min(packets, (long) tokens);
+        tokens -= granted;
+        sentPackets += granted;
+        setBacklog(worker, packets - granted, idle);
+        return granted;
+    }
+
+    /*
+     * Forget what a worker still had to send, when it disconnects.
+     */
+    public synchronized void cancel(Object worker) {
+        setBacklog(worker, 0, false);
+    }
+
+    private void refill(long now) {
+        tokens = Math.min(rate, tokens + (now - refilledAt) * (double) rate / 1e9);
+        refilledAt = now;
+    }
+
+    private void setBacklog(Object worker, int packets, boolean idle) {
+        Backlog backlog = backlogs.get(worker);
+        if (backlog != null) {
+            pendingPackets -= backlog.packets;
+            if (backlog.idle) {
+                idleBacklogs--;
+            }
+        }
+        if (packets == 0) {
+            backlogs.remove(worker);
+            return;
+        }
+        if (backlog == null) {
+            backlog = new Backlog();
+            backlogs.put(worker, backlog);
+        }
+        backlog.packets = packets;
+        backlog.idle = idle;
+        pendingPackets += packets;
+        if (idle) {
+            idleBacklogs++;
+        }
+    }
+
+    /*
+     * Number of workers which still have packets to send.
+     */
+    public synchronized int getPendingWorkers() {
+        return backlogs.size();
+    }
+
+    public synchronized int getPendingIdleWorkers() {
+        return idleBacklogs;
+    }
+
+    public synchronized long getPendingPackets() {
+        return pendingPackets;
+    }
+
+    public synchronized long getSentPackets() {
+        return sentPackets;
+    }
+
+    public int getPacketsPerSecond() {
+        return rate;
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ *
+ * Copyright 2026 Jenkins project contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package hudson.plugins.gearman;
+
+import hudson.model.Action;
+import hudson.model.Cause;
+import hudson.model.Queue;
+import hudson.model.queue.QueueTaskFuture;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import jenkins.util.SystemProperties;
+import jenkins.util.Timer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Schedules builds for Gearman jobs in batches.
+ *
+ * When many workers receive JOB_ASSIGN at the same time (after a gate
+ * reset for instance) each of them would take the queue lock to schedule
+ * its own build.  Instead, requests made within a short window are
+ * collected and scheduled together under a single Queue.withLock() block.
+ * Each caller still gets back the QueueTaskFuture of its own build, and
+ * every build is scheduled exactly as StartJobWorker used to do it.
+ *
+ * @see StartJobWorker
+ */
+public class ScheduleBatcher {
+
+    private static final Logger logger = LoggerFactory
+            .getLogger(Constants.PLUGIN_LOGGER_NAME);
+
+    // How long to collect requests before scheduling them.  With 0, a batch
+    // holds whatever arrived while the previous one was being scheduled.
+    private static final long WINDOW_MS = SystemProperties.getLong(
+            ScheduleBatcher.class.getName() + ".windowMillis", 0L);
+
+    // Set to schedule every build directly from the calling worker.
+    private static final boolean DISABLED = SystemProperties.getBoolean(
+            ScheduleBatcher.class.getName() + ".disabled");
+
+    private static final ScheduleBatcher instance = new ScheduleBatcher();
+
+    private final List<Request> pending = new ArrayList<Request>();
+    private boolean flushScheduled = false;
+    private long batches = 0;
+    private long requests = 0;
+
+    static class Request {
+        private final GearmanProject project;
+        private final Cause cause;
+        private final Action[] actions;
+        private final CompletableFuture<QueueTaskFuture<?>> result =
+            new CompletableFuture<QueueTaskFuture<?>>();
+        private boolean withdrawn = false;
+
+        Request(GearmanProject project, Cause cause, Action[] actions) {
+            this.project = project;
+            this.cause = cause;
+            this.actions = actions;
+        }
+
+        synchronized void schedule() {
+            if (withdrawn) {
+                return;
+            }
+            try {
+                result.complete(project.scheduleBuild2(0, cause, actions));
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        }
+
+        /*
+         * Take the request back once its caller gave up waiting, cancelling
+         * the build if it was scheduled already.
+         */
+        void withdraw() {
+            QueueTaskFuture<?> scheduled = null;
+            synchronized (this) {
+                withdrawn = true;
+                if (result.isDone() && !result.isCompletedExceptionally()) {
+                    scheduled = result.join();
+                }
+            }
+            // Not while holding the request, which flush() takes within
+            // the queue lock
+            if (scheduled != null) {
+                scheduled.cancel(true);
+            }
+        }
+    }
+
+    public static ScheduleBatcher getInstance() {
+        return instance;
+    }
+
+    /**
+     * Schedule a build of the project with the given cause and actions,
+     * waiting until the batch it belongs to has been scheduled.
+     *
+     * @return the future of the scheduled build, or null if Jenkins refused
+     *      to schedule it
+     * @throws InterruptedException if interrupted while waiting, in which
+     *      case the build is not scheduled, or cancelled
+     */
+    public QueueTaskFuture<?> schedule(GearmanProject project, Cause cause,
+                                       Action... actions)
+        throws InterruptedException, ExecutionException
+    {
+        if (DISABLED) {
+            return project.scheduleBuild2(0, cause, actions);
+        }
+
+        Request request = new Request(project, cause, actions);
+        synchronized (this) {
+            pending.add(request);
+            if (!flushScheduled) {
+                scheduleFlush();
+            }
+        }
+        try {
+            return request.result.get();
+        } catch (InterruptedException e) {
+            // The caller won't wait for the build, so don't leave one behind
+            request.withdraw();
+            throw e;
+        }
+    }
+
+    /*
+     * Only one flush is scheduled or running at a time, requests made in
+     * the meantime go to the next batch.
+     */
+    private synchronized void scheduleFlush() {
+        flushScheduled = true;
+        Timer.get().schedule(this::flush, WINDOW_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private void flush() {
+        final List<Request> batch;
+        synchronized (this) {
+            batch = new ArrayList<Request>(pending);
+            pending.clear();
+            batches++;
+            requests += batch.size();
+        }
+
+        logger.debug("---- Scheduling batch of " + batch.size() + " build(s)");
+        try {
+            Queue.withLock(() -> {
+                for (Request request : batch) {
+                    request.schedule();
+                }
+            });
+        } finally {
+            // Never leave a caller waiting, whatever happened above.
+            for (Request request : batch) {
+                request.result.completeExceptionally(
+                    new IllegalStateException("Build was not scheduled"));
+            }
+            synchronized (this) {
+                flushScheduled = false;
+                if (!pending.isEmpty()) {
+                    scheduleFlush();
+                }
+            }
+        }
+    }
+
+    public synchronized long getBatches() {
+        return batches;
+    }
+
+    public synchronized long getRequests() {
+        return requests;
+    }
+
+    /*
+     * Number of requests waiting for the next batch, for tests.
+     */
+    synchronized int getPending() {
+        return pending.size();
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ *
+ * Copyright 2026 Jenkins project contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package hudson.plugins.gearman;
+
+/**
+ * Aggregate timings for builds started through Gearman: how long a build
+ * spent between JOB_ASSIGN and leaving the Jenkins queue, and how many
+ * queue maintenance passes that took.
+ */
+public class SchedulingStatistics {
+
+    private static final SchedulingStatistics instance = new SchedulingStatistics();
+
+    private long builds = 0;
+    private long totalQueueWaitMillis = 0;
+    private long maxQueueWaitMillis = 0;
+    private long totalMaintenancePasses = 0;
+
+    public static SchedulingStatistics getInstance() {
+        return instance;
+    }
+
+    public synchronized void record(long queueWaitMillis, int maintenancePasses) {
+        builds++;
+        totalQueueWaitMillis += queueWaitMillis;
+        maxQueueWaitMillis = Math.max(maxQueueWaitMillis, queueWaitMillis);
+        totalMaintenancePasses += maintenancePasses;
+    }
+
+    public synchronized long getBuilds() {
+        return builds;
+    }
+
+    public synchronized long getMaxQueueWaitMillis() {
+        return maxQueueWaitMillis;
+    }
+
+    public synchronized long getAverageQueueWaitMillis() {
+        return builds == 0 ? 0 : totalQueueWaitMillis / builds;
+    }
+
+    public synchronized double getAverageMaintenancePasses() {
+        return builds == 0 ? 0 : (double) totalMaintenancePasses / builds;
+    }
+}
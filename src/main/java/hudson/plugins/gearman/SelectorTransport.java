@@ -0,0 +1,35 @@
+/*
+ *
+ * Copyright 2026 Jenkins project contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package hudson.plugins.gearman;
+
+import java.io.IOException;
+import java.nio.channels.Selector;
+
+/**
+ * A transport whose connections are driven through a
+ * java.nio.channels.Selector, as the sessions of gearman-java need.
+ */
+public abstract class SelectorTransport extends GearmanTransport {
+
+    /*
+     * The selector sessions of this transport wait for IO with.
+     */
+    public Selector openSelector() throws IOException {
+        return Selector.open();
+    }
+}
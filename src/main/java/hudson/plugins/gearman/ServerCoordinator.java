@@ -0,0 +1,356 @@
+/*
+ *
+ * Copyright 2026 Jenkins project contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package hudson.plugins.gearman;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import jenkins.util.SystemProperties;
+import jenkins.util.Timer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Coordinates the reconnects of all the workers of one gearman server.
+ *
+ * Without it every worker retries on its own when the server goes away,
+ * so hundreds of workers hammer the server (and DNS) every couple of
+ * seconds and all of them reconnect at the same instant once it is back.
+ *
+ * This is a circuit breaker shared by the workers: after a number of
+ * failed connects in a row it opens, the workers wait and a single probe
+ * checks the server periodically.  Once the server answers the breaker
+ * goes half-open and lets the waiting workers through in waves.  When
+ * all of them have been let through it closes again.  A worker failing
+ * to connect while half-open opens it again.
+ */
+public class ServerCoordinator {
+
+    private static final Logger logger = LoggerFactory
+            .getLogger(Constants.PLUGIN_LOGGER_NAME);
+
+    private static final String PREFIX = ServerCoordinator.class.getName();
+    // Failed connects in a row before workers stop trying on their own.
+    public static final int FAILURE_THRESHOLD = SystemProperties.getInteger(
+        PREFIX + ".failureThreshold", 3);
+    public static final long PROBE_INTERVAL_MS = SystemProperties.getLong(
+        PREFIX + ".probeIntervalMillis", 5000L);
+    // Number of workers let through at a time once the server is back.
+    public static final int WAVE_SIZE = SystemProperties.getInteger(
+        PREFIX + ".waveSize", 10);
+    public static final long WAVE_INTERVAL_MS = SystemProperties.getLong(
+        PREFIX + ".waveIntervalMillis", 500L);
+    // How long a resolved address is reused.
+    public static final long ADDRESS_TTL_MS = SystemProperties.getLong(
+        PREFIX + ".addressTtlMillis", 60000L);
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private static final Map<String, ServerCoordinator> servers =
+        new ConcurrentHashMap<String, ServerCoordinator>();
+
+    private final String host;
+    private final int port;
+    private final ScheduledExecutorService scheduler;
+    private State state = State.CLOSED;
+    private int failures = 0;
+    private long downSince = 0;
+    // Workers waiting in awaitTurn() and how many of them may go now
+    private int waiting = 0;
+    private int permits = 0;
+    private ScheduledFuture<?> task = null;
+    private boolean closed = false;
+    private SocketAddress address = null;
+    private long resolvedAt = 0;
+
+    ServerCoordinator(String host, int port, ScheduledExecutorService scheduler) {
+        this.host = host;
+        this.port = port;
+        this.scheduler = scheduler;
+    }
+
+    /*
+     * The coordinator shared by all the workers of a server.
+     */
+    public static ServerCoordinator forServer(String host, int port) {
+        return servers.computeIfAbsent(key(host, port),
+            k -> new ServerCoordinator(host, port, Timer.get()));
+    }
+
+    /*
+     * Coordinators by server, sorted for display.
+     */
+    public static Map<String, ServerCoordinator> getServers() {
+        return new TreeMap<String, ServerCoordinator>(servers);
+    }
+
+    /*
+     * Close and forget the coordinators of all servers but the given
+     * ones, for instance once the workers moved to other servers, so that
+     * their probes stop and they are no longer reported as down.
+     */
+    public static void retain(Collection<FunctionPartitioner.Server> inUse) {
+        Set<String> keys = new HashSet<String>();
+        for (FunctionPartitioner.Server server : inUse) {
+            keys.add(key(server.getHost(), server.getPort()));
+        }
+        for (Iterator<Map.Entry<String, ServerCoordinator>> it =
+                 servers.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, ServerCoordinator> e = it.next();
+            if (!keys.contains(e.getKey())) {
+                it.remove();
+                e.getValue().close();
+            }
+        }
+    }
+
+    private static String key(String host, int port) {
+        return GearmanSocketConnection.isUnixSocket(host) ? host : host + ":" + port;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /*
+     * Since when the server is considered down, or null if it is up.
+     */
+    public synchronized Date getDownSince() {
+        return downSince == 0 ? null : new Date(downSince);
+    }
+
+    public synchronized int getWaiting() {
+        return waiting;
+    }
+
+    /*
+     * The address to connect to.  Resolved addresses are cached so that
+     * reconnecting workers don't all do their own lookup.
+     */
+    public synchronized SocketAddress getAddress() {
+        long now = System.currentTimeMillis();
+        if (address == null || now - resolvedAt > ADDRESS_TTL_MS) {
+            SocketAddress resolved = GearmanSocketConnection.address(host, port);
+            if (resolved instanceof InetSocketAddress &&
+                ((InetSocketAddress) resolved).isUnresolved()) {
+                // Try again next time
+                return resolved;
+            }
+            address = resolved;
+            resolvedAt = now;
+        }
+        return address;
+    }
+
+    /*
+     * Wait until the calling worker may try to connect.
+     *
+     * @return false if the timeout expired first, the worker should check
+     *     whether it is still running and call this again.
+     */
+    public synchronized boolean awaitTurn(long timeoutMillis)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        waiting++;
+        try {
+            while (true) {
+                if (state == State.CLOSED) {
+                    return true;
+                }
+                if (permits > 0) {
+                    permits--;
+                    return true;
+                }
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                wait(remaining);
+            }
+        } finally {
+            waiting--;
+        }
+    }
+
+    /*
+     * Stop probing the server and let the waiting workers go.  Workers
+     * still holding on to a closed coordinator are not paced anymore.
+     */
+    synchronized void close() {
+        closed = true;
+        state = State.CLOSED;
+        failures = 0;
+        downSince = 0;
+        permits = 0;
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+        }
+        notifyAll();
+    }
+
+    synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /*
+     * The coordinator in charge of the server: this one, or the one which
+     * replaced it if it was closed, e.g. because the server was removed
+     * from the configuration and added back.
+     */
+    public ServerCoordinator current() {
+        if (isClosed()) {
+            return forServer(host, port);
+        }
+        return this;
+    }
+
+    public synchronized void connectSucceeded() {
+        failures = 0;
+    }
+
+    public synchronized void connectFailed(IOException e) {
+        failures++;
+        // Look the address up again in case the server moved
+        address = null;
+        if (closed) {
+            return;
+        }
+        if (state == State.HALF_OPEN ||
+            (state == State.CLOSED && failures >= FAILURE_THRESHOLD)) {
+            open(e);
+        }
+    }
+
+    private void open(IOException e) {
+        if (state == State.CLOSED) {
+            downSince = System.currentTimeMillis();
+            logger.warn("---- Gearman server " + this + " is unreachable (" +
+                        e + "), workers wait for it to come back");
+        } else {
+            logger.info("---- Gearman server " + this +
+                        " failed again while workers were reconnecting");
+        }
+        state = State.OPEN;
+        permits = 0;
+        schedule(this::probe, PROBE_INTERVAL_MS);
+    }
+
+    private void schedule(Runnable r, long intervalMillis) {
+        if (task != null) {
+            task.cancel(false);
+        }
+        task = scheduler.scheduleWithFixedDelay(r, intervalMillis,
+                                                intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /*
+     * Check once whether the server accepts connections again.
+     */
+    void probe() {
+        synchronized (this) {
+            if (state != State.OPEN) {
+                return;
+            }
+        }
+        try {
+            connect(getAddress());
+        } catch (IOException e) {
+            logger.debug("---- Gearman server " + this + " still unreachable: " + e);
+            synchronized (this) {
+                address = null;
+            }
+            return;
+        }
+        synchronized (this) {
+            if (state != State.OPEN) {
+                return;
+            }
+            logger.info("---- Gearman server " + this + " is reachable again after " +
+                        (System.currentTimeMillis() - downSince) / 1000 +
+                        "s, releasing " + waiting + " workers");
+            state = State.HALF_OPEN;
+            schedule(this::releaseWave, WAVE_INTERVAL_MS);
+            releaseWave();
+        }
+    }
+
+    /*
+     * Let the next wave of waiting workers connect, or close the breaker
+     * once nobody is waiting anymore.
+     */
+    synchronized void releaseWave() {
+        if (state != State.HALF_OPEN) {
+            return;
+        }
+        if (waiting == 0) {
+            logger.info("---- Gearman server " + this + " is back");
+            state = State.CLOSED;
+            failures = 0;
+            downSince = 0;
+            permits = 0;
+            if (task != null) {
+                task.cancel(false);
+                task = null;
+            }
+        } else {
+            // Permits left over from the previous wave don't add up
+            permits = WAVE_SIZE;
+        }
+        notifyAll();
+    }
+
+    /*
+     * Open and close a connection to the server.
+     */
+    protected void connect(SocketAddress address) throws IOException {
+        boolean unix = address instanceof UnixDomainSocketAddress;
+        try (SocketChannel ch = unix ? SocketChannel.open(StandardProtocolFamily.UNIX) :
+                                       SocketChannel.open()) {
+            if (unix) {
+                ch.connect(address);
+            } else {
+                ch.socket().connect(address, SocketTuning.CONNECT_TIMEOUT_MS);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return key(host, port);
+    }
+}
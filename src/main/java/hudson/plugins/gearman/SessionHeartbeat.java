@@ -0,0 +1,127 @@
+/*
+ *
+ * Copyright 2026 Jenkins project contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package hudson.plugins.gearman;
+
+import java.util.concurrent.TimeUnit;
+
+import jenkins.util.SystemProperties;
+
+/**
+ * Keeps track of the liveness of a worker's session.
+ *
+ * When nothing was received from the server for an interval the worker
+ * sends an ECHO_REQ.  An ECHO_RES not received within another interval
+ * counts as missed, and after a number of missed replies in a row the
+ * worker drops the connection and reconnects, rather than waiting for
+ * TCP keep-alive to notice a half-open connection.
+ *
+ * Only used from the worker thread.
+ */
+public class SessionHeartbeat {
+
+    public static final long INTERVAL_MS = SystemProperties.getLong(
+        SessionHeartbeat.class.getName() + ".intervalMillis", 30000L);
+    public static final int MAX_MISSED = SystemProperties.getInteger(
+        SessionHeartbeat.class.getName() + ".maxMissed", 3);
+
+    public enum Action {
+        NONE, SEND_ECHO, RECONNECT
+    }
+
+    private final long intervalNanos;
+    private final int maxMissed;
+    private long lastActivity;
+    private long echoSentAt = -1;
+    private int missed = 0;
+
+    /*
+     * An interval of 0 disables the heartbeat.
+     */
+    public SessionHeartbeat(long intervalMillis, int maxMissed) {
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+        this.maxMissed = Math.max(1, maxMissed);
+        this.lastActivity = System.nanoTime();
+    }
+
+    public boolean isEnabled() {
+        return intervalNanos > 0;
+    }
+
+    /*
+     * Start over on a new connection.
+     */
+    public void reset(long now) {
+        lastActivity = now;
+        echoSentAt = -1;
+        missed = 0;
+    }
+
+    /*
+     * The server sent us something, so it is alive.
+     */
+    public void activity(long now) {
+        lastActivity = now;
+        missed = 0;
+    }
+
+    /*
+     * Decide whether an ECHO_REQ should be sent or the connection dropped.
+     */
+    public Action check(long now) {
+        if (!isEnabled()) {
+            return Action.NONE;
+        }
+        if (echoSentAt >= 0) {
+            if (now - echoSentAt < intervalNanos) {
+                return Action.NONE;
+            }
+            echoSentAt = -1;
+            if (++missed >= maxMissed) {
+                return Action.RECONNECT;
+            }
+        } else if (now - lastActivity < intervalNanos) {
+            return Action.NONE;
+        }
+        echoSentAt = now;
+        return Action.SEND_ECHO;
+    }
+
+    /*
+     * Record an ECHO_RES and return the round trip time in nanoseconds,
+     * or -1 if we were not waiting for one.
+     */
+    public long echoReceived(long now) {
+        long rtt = echoSentAt >= 0 ? now - echoSentAt : -1;
+        echoSentAt = -1;
+        activity(now);
+        return rtt;
+    }
+
+    /*
+     * Milliseconds until check() has something to do, at least 1.
+     */
+    public long millisUntilDue(long now) {
+        long due = (echoSentAt >= 0 ? echoSentAt : lastActivity) + intervalNanos;
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(due - now) + 1);
+    }
+
+    public int getMissed() {
+        return missed;
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ *
+ * Copyright 2026 Jenkins project contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package hudson.plugins.gearman;
+
+import java.io.IOException;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SocketChannel;
+
+import jenkins.util.SystemProperties;
+import jdk.net.ExtendedSocketOptions;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Socket options of the connections to the gearman server.
+ *
+ * Set with system properties named after this class, for instance
+ * -Dhudson.plugins.gearman.SocketTuning.keepAliveIdle=60.  Negative values
+ * leave the operating system default in place.
+ */
+public final class SocketTuning {
+
+    private static final Logger logger = LoggerFactory
+            .getLogger(Constants.PLUGIN_LOGGER_NAME);
+
+    private static final String PREFIX = SocketTuning.class.getName() + ".";
+
+    // Send small packets like GRAB_JOB right away
+    public static final boolean TCP_NO_DELAY = SystemProperties.getBoolean(
+        PREFIX + "tcpNoDelay", true);
+    // Detect dead peers, tuned by the three following settings
+    public static final boolean KEEP_ALIVE = SystemProperties.getBoolean(
+        PREFIX + "keepAlive", true);
+    // Seconds of idle time before the first keep-alive probe
+    public static final int KEEP_ALIVE_IDLE = SystemProperties.getInteger(
+        PREFIX + "keepAliveIdle", -1);
+    // Seconds between keep-alive probes
+    public static final int KEEP_ALIVE_INTERVAL = SystemProperties.getInteger(
+        PREFIX + "keepAliveInterval", -1);
+    // Unanswered probes before the connection is dropped
+    public static final int KEEP_ALIVE_COUNT = SystemProperties.getInteger(
+        PREFIX + "keepAliveCount", -1);
+    public static final int SEND_BUFFER_SIZE = SystemProperties.getInteger(
+        PREFIX + "sendBufferSize", -1);
+    public static final int RECEIVE_BUFFER_SIZE = SystemProperties.getInteger(
+        PREFIX + "receiveBufferSize", -1);
+    public static final int CONNECT_TIMEOUT_MS = SystemProperties.getInteger(
+        PREFIX + "connectTimeoutMillis", 10000);
+
+    private SocketTuning() {
+    }
+
+    /**
+     * Apply the options to a channel before it connects.
+     *
+     * @param tcp false for a unix domain socket, which only takes the
+     *      buffer sizes
+     */
+    public static void apply(SocketChannel channel, boolean tcp) throws IOException {
+        if (SEND_BUFFER_SIZE > 0) {
+            set(channel, StandardSocketOptions.SO_SNDBUF, SEND_BUFFER_SIZE);
+        }
+        if (RECEIVE_BUFFER_SIZE > 0) {
+            set(channel, StandardSocketOptions.SO_RCVBUF, RECEIVE_BUFFER_SIZE);
+        }
+        if (!tcp) {
+            return;
+        }
+        set(channel, StandardSocketOptions.TCP_NODELAY, TCP_NO_DELAY);
+        set(channel, StandardSocketOptions.SO_KEEPALIVE, KEEP_ALIVE);
+        if (KEEP_ALIVE) {
+            if (KEEP_ALIVE_IDLE > 0) {
+                set(channel, ExtendedSocketOptions.TCP_KEEPIDLE, KEEP_ALIVE_IDLE);
+            }
+            if (KEEP_ALIVE_INTERVAL > 0) {
+                set(channel, ExtendedSocketOptions.TCP_KEEPINTERVAL, KEEP_ALIVE_INTERVAL);
+            }
+            if (KEEP_ALIVE_COUNT > 0) {
+                set(channel, ExtendedSocketOptions.TCP_KEEPCOUNT, KEEP_ALIVE_COUNT);
+            }
+        }
+    }
+
+    /*
+     * Set an option unless the channel does not support it.
+     *
+     * @return whether the option was set
+     */
+    static <T> boolean set(SocketChannel channel, SocketOption<T> option,
+                           T value) throws IOException {
+        if (channel.supportedOptions().contains(option)) {
+            channel.setOption(option, value);
+            return true;
+        }
+        logger.warn("---- Socket option " + option + " is not supported " +
+                    "on this platform, ignoring it");
+        return false;
+    }
+}
@@ -0,0 +1,489 @@
+/*
+ *
+ * Copyright 2026 Jenkins project contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package hudson.plugins.gearman;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jenkins.util.SystemProperties;
+import jenkins.util.Timer;
+
+import org.gearman.common.GearmanException;
+import org.gearman.common.GearmanJobServerConnection;
+import org.gearman.common.GearmanJobServerSession;
+import org.gearman.common.GearmanPacket;
+import org.gearman.common.GearmanPacketImpl;
+import org.gearman.common.GearmanPacketMagic;
+import org.gearman.common.GearmanPacketType;
+import org.gearman.common.GearmanServerResponseHandler;
+import org.gearman.common.GearmanSessionEvent;
+import org.gearman.common.GearmanSessionEventHandler;
+import org.gearman.common.GearmanTask;
+import org.gearman.util.ByteUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A warm standby session of a worker to a secondary gearman server.
+ *
+ * The standby is connected in the background and registers the same
+ * functions as the worker, but never grabs jobs.  When the session to the
+ * primary server drops the worker promotes the standby to be its session
+ * and can grab jobs right away, instead of connecting and registering all
+ * of its functions first.  A new standby to the former primary server is
+ * then built in the background.
+ *
+ * Disabled unless a secondary server is configured with the
+ * hudson.plugins.gearman.StandbySession.server system property, as
+ * host:port or as a socket path.  Apart from the background connect it is
+ * only used from the worker thread.
+ */
+public class StandbySession implements GearmanSessionEventHandler {
+
+    private static final Logger logger = LoggerFactory
+            .getLogger(Constants.PLUGIN_LOGGER_NAME);
+
+    public static final String SERVER = SystemProperties.getString(
+        StandbySession.class.getName() + ".server");
+    // How long to wait before connecting again after a failure
+    public static final long RETRY_MS = 5000;
+    // How often the session is checked when there is nothing to send
+    private static final long POLL_MS = 1000;
+    // How long the standby has to answer an ECHO_REQ before taking over
+    public static final long ECHO_TIMEOUT_MS = SystemProperties.getLong(
+        StandbySession.class.getName() + ".echoTimeoutMillis", 1000L);
+
+    private static final AtomicLong failovers = new AtomicLong();
+
+    private final String host;
+    private final int port;
+    private final String failbackHost;
+    private final int failbackPort;
+    private final RegistrationThrottle throttle = RegistrationThrottle.getInstance();
+    private MyGearmanWorkerImpl worker = null;
+    private GearmanJobServerConnection connection = null;
+    private SelectorTransport transport = null;
+    private GearmanJobServerSession session = null;
+    private Selector selector = null;
+    private volatile boolean connected = false;
+    private volatile boolean connecting = false;
+    private volatile boolean closed = false;
+    private volatile boolean promoted = false;
+    private long lastAttempt = 0;
+    // Holds a reference to each of its ids, see FunctionNameTable
+    private BitSet functionIds = new BitSet();
+    private boolean abilitiesKnown = false;
+    private boolean registrationPending = false;
+    private final SessionHeartbeat heartbeat = new SessionHeartbeat(
+        SessionHeartbeat.INTERVAL_MS, SessionHeartbeat.MAX_MISSED);
+    // Number of ECHO_RES received
+    private int echoes = 0;
+
+    /*
+     * Replies to our ECHO_REQ.
+     */
+    private class EchoHandler implements GearmanServerResponseHandler {
+        private boolean isDone = false;
+
+        public void handleEvent(GearmanPacket event) throws GearmanException {
+            long now = System.nanoTime();
+            if (event.getPacketType() == GearmanPacketType.ECHO_RES) {
+                heartbeat.echoReceived(now);
+                echoes++;
+            } else {
+                heartbeat.activity(now);
+            }
+            isDone = true;
+        }
+
+        public boolean isDone() {
+            return isDone;
+        }
+    }
+
+    /*
+     * A standby to host:port for a worker whose primary server is
+     * failbackHost:failbackPort.
+     */
+    StandbySession(String host, int port, String failbackHost, int failbackPort) {
+        this.host = host;
+        this.port = port;
+        this.failbackHost = failbackHost;
+        this.failbackPort = failbackPort;
+    }
+
+    /*
+     * The standby for a worker of a primary server, or null if there is no
+     * secondary server configured.
+     */
+    public static StandbySession forPrimary(String host, int port) {
+        return forPrimary(SERVER, host, port);
+    }
+
+    static StandbySession forPrimary(String server, String host, int port) {
+        if (server == null || server.trim().isEmpty()) {
+            return null;
+        }
+        String standbyHost = server.trim();
+        int standbyPort = Constants.GEARMAN_DEFAULT_TCP_PORT;
+        int colon = standbyHost.lastIndexOf(':');
+        if (!GearmanSocketConnection.isUnixSocket(standbyHost) && colon > 0) {
+            try {
+                standbyPort = Integer.parseInt(standbyHost.substring(colon + 1));
+                standbyHost = standbyHost.substring(0, colon);
+            } catch (NumberFormatException e) {
+                logger.warn("---- Invalid standby gearman server " + server);
+                return null;
+            }
+        }
+        if (standbyHost.equals(host) && standbyPort == port) {
+            return null;
+        }
+        return new StandbySession(standbyHost, standbyPort, host, port);
+    }
+
+    /*
+     * Number of times a worker failed over to its standby.
+     */
+    public static long getFailovers() {
+        return failovers.get();
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    void setWorker(MyGearmanWorkerImpl worker) {
+        this.worker = worker;
+    }
+
+    GearmanJobServerConnection getConnection() {
+        return connection;
+    }
+
+    SelectorTransport getTransport() {
+        return transport;
+    }
+
+    GearmanJobServerSession getSession() {
+        return session;
+    }
+
+    Selector getSelector() {
+        return selector;
+    }
+
+    BitSet getFunctionIds() {
+        return functionIds;
+    }
+
+    boolean isAbilitiesKnown() {
+        return abilitiesKnown;
+    }
+
+    /*
+     * Whether the standby can take over from the primary session.
+     */
+    public boolean isConnected() {
+        return connected && session.isInitialized();
+    }
+
+    /*
+     * Connect the standby in the background if needed, drive its IO and
+     * register the functions the worker wants on it.
+     */
+    void maintain(BitSet wanted) {
+        if (closed || promoted) {
+            return;
+        }
+        if (!connected) {
+            long now = System.currentTimeMillis();
+            if (!connecting && now - lastAttempt >= RETRY_MS &&
+                ServerCoordinator.forServer(host, port).getState() ==
+                    ServerCoordinator.State.CLOSED) {
+                lastAttempt = now;
+                connecting = true;
+                Timer.get().submit(this::connect);
+            }
+            return;
+        }
+        try {
+            if (session.isInitialized()) {
+                register(wanted);
+            }
+            if (session.isInitialized()) {
+                SelectionKey key = session.getSelectionKey();
+                int interestOps = SelectionKey.OP_READ;
+                if (session.sessionHasDataToWrite()) {
+                    interestOps |= SelectionKey.OP_WRITE;
+                }
+                key.interestOps(interestOps);
+                if (selector.selectNow() > 0 && selector.selectedKeys().remove(key)) {
+                    session.driveSessionIO();
+                }
+            }
+            if (session.isInitialized()) {
+                switch (heartbeat.check(System.nanoTime())) {
+                    case SEND_ECHO:
+                        echo();
+                        break;
+                    case RECONNECT:
+                        logger.warn("---- Standby session " + this + " of worker " + worker +
+                                    " missed " + heartbeat.getMissed() + " heartbeats");
+                        session.closeSession();
+                        break;
+                    default:
+                        break;
+                }
+            }
+        } catch (IOException | UncheckedIOException | GearmanException e) {
+            logger.warn("---- Standby session " + this + " of worker " + worker +
+                        " failed", e);
+            session.closeSession();
+        }
+        if (!session.isInitialized()) {
+            logger.info("---- Standby session " + this + " of worker " + worker +
+                        " disconnected");
+            disconnected();
+        }
+    }
+
+    /*
+     * How long the worker may wait before calling maintain() again.
+     */
+    long millisUntilDue() {
+        long due = registrationPending ? RegistrationThrottle.RETRY_MS : POLL_MS;
+        if (connected && heartbeat.isEnabled()) {
+            due = Math.min(due, heartbeat.millisUntilDue(System.nanoTime()));
+        }
+        return due;
+    }
+
+    /*
+     * Make sure the standby server still answers before it takes over:
+     * send an ECHO_REQ and wait for the reply, at most for the timeout.
+     * A standby which does not answer is disconnected, it connects again
+     * in the background.
+     */
+    boolean confirmAlive(long timeoutMillis) {
+        if (closed || promoted || !isConnected()) {
+            return false;
+        }
+        int before = echoes;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        try {
+            echo();
+            SelectionKey key = session.getSelectionKey();
+            while (echoes == before && session.isInitialized()) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0) {
+                    break;
+                }
+                int interestOps = SelectionKey.OP_READ;
+                if (session.sessionHasDataToWrite()) {
+                    interestOps |= SelectionKey.OP_WRITE;
+                }
+                key.interestOps(interestOps);
+                if (selector.select(remaining) > 0 && selector.selectedKeys().remove(key)) {
+                    session.driveSessionIO();
+                }
+            }
+        } catch (IOException | UncheckedIOException | GearmanException e) {
+            logger.warn("---- Standby session " + this + " of worker " + worker +
+                        " failed", e);
+        }
+        if (echoes != before && session.isInitialized()) {
+            return true;
+        }
+        logger.warn("---- Standby session " + this + " of worker " + worker +
+                    " did not answer within " + timeoutMillis + "ms, not failing over");
+        session.closeSession();
+        disconnected();
+        return false;
+    }
+
+    private void echo() throws IOException {
+        session.submitTask(new GearmanTask(new EchoHandler(), GearmanPacketCodec.ECHO_REQ));
+        session.driveSessionIO();
+        flush();
+    }
+
+    /*
+     * Send the CAN_DO and CANT_DO the standby server is missing, as
+     * throttled busy worker so that it never delays primary sessions.
+     */
+    private void register(BitSet wanted) throws IOException {
+        boolean reset = !abilitiesKnown;
+        BitSet added = (BitSet) wanted.clone();
+        BitSet removed = (BitSet) functionIds.clone();
+        if (reset) {
+            removed.clear();
+        } else {
+            added.andNot(functionIds);
+            removed.andNot(wanted);
+        }
+        int packets = (reset ? 1 : 0) + removed.cardinality() + added.cardinality();
+        if (packets == 0) {
+            registrationPending = false;
+            return;
+        }
+        int granted = throttle.acquire(this, packets, false);
+        registrationPending = granted < packets;
+        if (reset && granted > 0) {
+            send(GearmanPacketCodec.RESET_ABILITIES);
+            FunctionNameTable.release(functionIds);
+            abilitiesKnown = true;
+            granted--;
+        }
+        for (int id = removed.nextSetBit(0); id >= 0 && granted > 0;
+             id = removed.nextSetBit(id + 1), granted--) {
+            send(FunctionNameTable.cantDo(id));
+            functionIds.clear(id);
+            FunctionNameTable.release(id);
+        }
+        for (int id = added.nextSetBit(0); id >= 0 && granted > 0;
+             id = added.nextSetBit(id + 1), granted--) {
+            send(FunctionNameTable.canDo(id));
+            FunctionNameTable.acquire(id);
+            functionIds.set(id);
+        }
+        session.driveSessionIO();
+        flush();
+    }
+
+    private void send(GearmanPacket p) {
+        session.submitTask(new GearmanTask(null, p));
+    }
+
+    private void flush() throws IOException {
+        transport.flush(connection);
+    }
+
+    /*
+     * Runs in the background.
+     */
+    private void connect() {
+        ServerCoordinator coordinator = ServerCoordinator.forServer(host, port);
+        try {
+            transport = GearmanTransport.forServer(host);
+            if (selector == null) {
+                selector = transport.openSelector();
+            }
+            connection = transport.createConnection(host, port);
+            transport.setCoordinator(connection, coordinator);
+            session = new GearmanJobServerSession(connection);
+            session.initSession(selector, this);
+            coordinator.connectSucceeded();
+            String id = worker.getWorkerID();
+            if (id != null) {
+                send(new GearmanPacketImpl(GearmanPacketMagic.REQ,
+                                           GearmanPacketType.SET_CLIENT_ID,
+                                           ByteUtils.toUTF8Bytes(id)));
+                session.driveSessionIO();
+                flush();
+            }
+            logger.info("---- Standby session " + this + " of worker " + worker +
+                        " connected");
+            heartbeat.reset(System.nanoTime());
+            connected = true;
+        } catch (IOException e) {
+            logger.debug("---- Standby session " + this + " of worker " + worker +
+                         " failed to connect: " + e);
+            coordinator.connectFailed(e);
+            if (session != null) {
+                session.closeSession();
+            }
+        } finally {
+            connecting = false;
+            if (closed) {
+                close();
+            }
+        }
+    }
+
+    private void disconnected() {
+        connected = false;
+        if (!promoted) {
+            // Otherwise the worker took the ids over
+            FunctionNameTable.release(functionIds);
+        }
+        abilitiesKnown = false;
+        registrationPending = false;
+        throttle.cancel(this);
+    }
+
+    /*
+     * Hand the session over to the worker, whose primary session dropped.
+     * Events of the session go to the worker from now on.
+     *
+     * @return the standby to build next, to the former primary server
+     */
+    StandbySession promote() {
+        promoted = true;
+        throttle.cancel(this);
+        failovers.incrementAndGet();
+        StandbySession next = new StandbySession(failbackHost, failbackPort, host, port);
+        next.setWorker(worker);
+        return next;
+    }
+
+    void close() {
+        closed = true;
+        if (promoted || connecting) {
+            // The session belongs to the worker now, or the background
+            // connect closes it when it is done.
+            return;
+        }
+        if (session != null) {
+            session.closeSession();
+        }
+        if (selector != null) {
+            try {
+                selector.close();
+            } catch (IOException e) {
+                logger.warn("---- Failed to close selector of standby session " + this, e);
+            }
+        }
+        disconnected();
+    }
+
+    public void handleSessionEvent(GearmanSessionEvent event)
+            throws IllegalArgumentException, IllegalStateException {
+        if (promoted) {
+            worker.handleSessionEvent(event);
+        } else {
+            // The server is alive, there is nothing else to do
+            heartbeat.activity(System.nanoTime());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return GearmanSocketConnection.isUnixSocket(host) ? host : host + ":" + port;
+    }
+}
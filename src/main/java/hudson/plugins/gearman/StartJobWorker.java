@@ -30,8 +30,13 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
 import org.gearman.client.GearmanIOEventListener;
 import org.gearman.client.GearmanJobResult;
 import org.gearman.client.GearmanJobResultImpl;
@@ -58,17 +63,45 @@ public class StartJobWorker extends AbstractGearmanFunction {
     private static final Logger logger = LoggerFactory
             .getLogger(Constants.PLUGIN_LOGGER_NAME);
 
+    // How long to wait for the build to leave the queue before asking
+    // Jenkins for another maintenance pass.
+    private static final long MAINTENANCE_RETRY_MS = SystemProperties.getLong(
+            StartJobWorker.class.getName() + ".maintenanceRetryMillis", 1000L);
+
     Computer computer;
     GearmanProject project;
     String builtInName;
     MyGearmanWorkerImpl worker;
 
+    // Functions are instantiated when the worker handles JOB_ASSIGN, so
+    // this is the time the job was assigned to us.
+    private final long assignedAt;
+    private long queueWaitMillis = -1;
+    private int maintenancePasses = 0;
+
     public StartJobWorker(GearmanProject project, Computer computer, String builtInName,
                           MyGearmanWorkerImpl worker) {
         this.project = project;
         this.computer = computer;
         this.builtInName = builtInName;
         this.worker = worker;
+        this.assignedAt = System.nanoTime();
+    }
+
+    /**
+     * Milliseconds from JOB_ASSIGN until the build left the queue, or -1
+     * if the build has not started yet.
+     */
+    public long getQueueWaitMillis() {
+        return queueWaitMillis;
+    }
+
+    /**
+     * Number of queue maintenance passes we requested before the build
+     * started.
+     */
+    public int getMaintenancePasses() {
+        return maintenancePasses;
     }
 
    private String buildStatusData(Run<?, ?> build) {
@@ -113,6 +146,32 @@ public class StartJobWorker extends AbstractGearmanFunction {
         }
     }
 
+    /*
+     * Wait for the scheduled build to leave the queue.
+     *
+     * Jenkins only hands a queued item to an executor during
+     * Queue.maintain(), which otherwise runs on a timer.  We hold the node
+     * lock until the build starts, so ask for maintenance straight away and
+     * again every MAINTENANCE_RETRY_MS until the build is running.
+     */
+    private Queue.Executable waitForStart(QueueTaskFuture<?> future)
+        throws InterruptedException, ExecutionException
+    {
+        Future<Queue.Executable> startCondition = future.getStartCondition();
+        Queue queue = Queue.getInstance();
+        while (true) {
+            maintenancePasses++;
+            queue.scheduleMaintenance();
+            try {
+                return startCondition.get(MAINTENANCE_RETRY_MS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                logger.debug("---- Worker " + this.worker + " build of " +
+                             project.getJob().getName() + " still queued after " +
+                             maintenancePasses + " maintenance passes");
+            }
+        }
+    }
+
     private GearmanJobResult safeExecuteFunction()
         throws Exception
     {
@@ -168,10 +227,18 @@ public class StartJobWorker extends AbstractGearmanFunction {
                     project.getJob().getName()+" build #" +
                     project.getJob().getNextBuildNumber()+" on " + runNodeName
                     + " with UUID " + decodedUniqueId + " and build params " + buildParams);
-        QueueTaskFuture<?> future = project.scheduleBuild2(0, new Cause.UserIdCause(), actions);
+        QueueTaskFuture<?> future;
+        try {
+            future = ScheduleBatcher.getInstance().schedule(
+                    project, new Cause.UserIdCause(), actions);
+        } catch (Exception e) {
+            availability.unlock(worker);
+            throw e;
+        }
 
         // check build and pass results back to client
         String jobData;
+        Run<?, ?> currBuild = null;
 
         try {
             // This is a hack that relies on implementation knowledge.  In
@@ -188,9 +255,15 @@ public class StartJobWorker extends AbstractGearmanFunction {
             }
 
             // wait for start of build
-            Queue.Executable exec = future.getStartCondition().get();
+            Queue.Executable exec = waitForStart(future);
             // use common output
-            Run<?, ?> currBuild = (Run<?, ?>) exec;
+            currBuild = (Run<?, ?>) exec;
+
+            queueWaitMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - assignedAt);
+            SchedulingStatistics.getInstance().record(queueWaitMillis, maintenancePasses);
+            logger.info("---- Worker " + this.worker + " started " + currBuild +
+                        " " + queueWaitMillis + "ms after job assignment (" +
+                        maintenancePasses + " queue maintenance passes)");
 
             if (!offlineWhenComplete) {
                 // Unlock the monitor for this worker
@@ -203,9 +276,13 @@ public class StartJobWorker extends AbstractGearmanFunction {
             jobData = buildStatusData(currBuild);
 
             sendData(jobData.getBytes("UTF-8"));
-            sess.driveSessionIO();
             sendStatus(estimatedDuration, duration);
-            sess.driveSessionIO();
+            if (sess != null) {
+                // Otherwise we run on a node worker's executor service and
+                // the worker thread delivers our packets.
+                sess.driveSessionIO();
+                worker.flushWrites();
+            }
 
             future.get();
             jobData = buildStatusData(currBuild);
@@ -222,6 +299,11 @@ public class StartJobWorker extends AbstractGearmanFunction {
                         new OfflineCause.ByCLI("Offline due to Gearman request"));
                 }
             }
+            if (offlineWhenComplete || currBuild == null) {
+                // We still hold the node lock: either we kept it to take
+                // the node offline, or the build never started.
+                availability.unlock(worker);
+            }
         }
 
         // return result to client
@@ -0,0 +1,209 @@
+/*
+ *
+ * Copyright 2026 Jenkins project contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package hudson.plugins.gearman;
+
+import hudson.model.Computer;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import jenkins.util.SystemProperties;
+
+import org.gearman.worker.GearmanFunctionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Starts the workers of all the nodes in stages, when the plugin is
+ * enabled or Jenkins boots, instead of node by node with every worker
+ * connecting and registering at the same moment:
+ *
+ *  - the functions of every node are planned in parallel,
+ *  - workers connect with a bounded concurrency,
+ *  - they register their functions through the RegistrationThrottle.
+ *
+ * It also records how long it took until the first worker was ready to
+ * grab a job, and until all of them were.
+ */
+public class WorkerStartup {
+
+    private static final Logger logger = LoggerFactory
+            .getLogger(Constants.PLUGIN_LOGGER_NAME);
+
+    private static final String PREFIX = WorkerStartup.class.getName();
+    // Workers connecting to the server at the same time
+    public static final int CONNECT_CONCURRENCY = SystemProperties.getInteger(
+        PREFIX + ".connectConcurrency", 16);
+    public static final int PLAN_THREADS = SystemProperties.getInteger(
+        PREFIX + ".planThreads", Runtime.getRuntime().availableProcessors());
+
+    // The last startup, shown on the status page
+    private static volatile WorkerStartup last = null;
+
+    private final long startedAt = System.nanoTime();
+    private final Semaphore connectSlots;
+    private final Set<Object> ready = ConcurrentHashMap.newKeySet();
+    private volatile int expected = -1;
+    private volatile long planMillis = -1;
+    private volatile long firstGrabMillis = -1;
+    private volatile long fullCapacityMillis = -1;
+
+    WorkerStartup(int connectConcurrency) {
+        connectSlots = new Semaphore(Math.max(1, connectConcurrency));
+    }
+
+    /*
+     * Start recording a new startup.
+     */
+    public static WorkerStartup begin() {
+        WorkerStartup startup = new WorkerStartup(CONNECT_CONCURRENCY);
+        last = startup;
+        return startup;
+    }
+
+    public static WorkerStartup getLast() {
+        return last;
+    }
+
+    /*
+     * Plan the functions of the computers in parallel.  Computers whose
+     * plan failed are left out, their workers plan for themselves.
+     */
+    public Map<Computer, Map<String, GearmanFunctionFactory>> plan(
+            List<Computer> computers,
+            Function<Computer, Map<String, GearmanFunctionFactory>> planner) {
+        Map<Computer, Map<String, GearmanFunctionFactory>> plans =
+            new HashMap<Computer, Map<String, GearmanFunctionFactory>>();
+        ExecutorService pool = Executors.newFixedThreadPool(
+            Math.max(1, Math.min(PLAN_THREADS, computers.size())),
+            new NamingThreadFactory(new DaemonThreadFactory(), "Gearman startup planner"));
+        try {
+            List<Future<Map<String, GearmanFunctionFactory>>> futures =
+                new ArrayList<Future<Map<String, GearmanFunctionFactory>>>();
+            for (Computer computer : computers) {
+                futures.add(pool.submit(() -> planner.apply(computer)));
+            }
+            for (int i = 0; i < computers.size(); i++) {
+                try {
+                    plans.put(computers.get(i), futures.get(i).get());
+                } catch (ExecutionException e) {
+                    logger.warn("---- Failed to plan the functions of " + computers.get(i), e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            pool.shutdownNow();
+        }
+        planMillis = millisSinceStart();
+        return plans;
+    }
+
+    /*
+     * Wait for a slot to connect to the server in.
+     */
+    public void acquireConnectSlot() throws InterruptedException {
+        connectSlots.acquire();
+    }
+
+    public void releaseConnectSlot() {
+        connectSlots.release();
+    }
+
+    /*
+     * All the workers of this startup were started.
+     */
+    public void setExpected(int workers) {
+        expected = workers;
+        checkFullCapacity();
+    }
+
+    /*
+     * A worker registered its functions and is about to grab a job for
+     * the first time.
+     */
+    public void workerReady(Object worker) {
+        if (!ready.add(worker)) {
+            return;
+        }
+        if (firstGrabMillis < 0) {
+            synchronized (this) {
+                if (firstGrabMillis < 0) {
+                    firstGrabMillis = millisSinceStart();
+                    logger.info("---- First Gearman worker ready after " +
+                                firstGrabMillis + "ms");
+                }
+            }
+        }
+        checkFullCapacity();
+    }
+
+    public boolean isReady(Object worker) {
+        return ready.contains(worker);
+    }
+
+    private synchronized void checkFullCapacity() {
+        if (fullCapacityMillis < 0 && expected >= 0 && ready.size() >= expected) {
+            fullCapacityMillis = millisSinceStart();
+            logger.info("---- All " + expected + " Gearman workers ready after " +
+                        fullCapacityMillis + "ms");
+        }
+    }
+
+    private long millisSinceStart() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+    }
+
+    public int getExpected() {
+        return expected;
+    }
+
+    public int getReady() {
+        return ready.size();
+    }
+
+    /*
+     * The times below are in milliseconds since the startup began, or -1
+     * if that stage was not reached yet.
+     */
+    public long getPlanMillis() {
+        return planMillis;
+    }
+
+    public long getFirstGrabMillis() {
+        return firstGrabMillis;
+    }
+
+    public long getFullCapacityMillis() {
+        return fullCapacityMillis;
+    }
+}
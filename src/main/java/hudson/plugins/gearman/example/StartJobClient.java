@@ -18,6 +18,8 @@
 
 package hudson.plugins.gearman.example;
 
+import hudson.plugins.gearman.FunctionPartitioner;
+
 import java.util.UUID;
 
 import org.gearman.client.GearmanClient;
@@ -51,6 +53,15 @@ public class StartJobClient {
         String uniqueId = UUID.randomUUID().toString();
         String params = "{param1:red, param2:white, param3:blue}";
 
+        // When the functions are partitioned among a cluster of servers
+        // submit the job to the server which owns the function
+        String servers = System.getProperty(FunctionPartitioner.class.getName() + ".servers");
+        if (servers != null) {
+            FunctionPartitioner.Server owner = new FunctionPartitioner(servers).owner(function);
+            host = owner.getHost();
+            port = owner.getPort();
+        }
+
         // connect client to server
         GearmanClient client = new GearmanClientImpl();
         GearmanNIOJobServerConnection conn = new GearmanNIOJobServerConnection(host, port);
@@ -0,0 +1,104 @@
+/*
+ *
+ * Copyright 2026 Jenkins project contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package hudson.plugins.gearman;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test for the {@link BuiltInNameResolver} class.
+ */
+public class BuiltInNameResolverTest {
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testDefaultUntilResolved() throws Exception {
+        final CountDownLatch dns = new CountDownLatch(1);
+        BuiltInNameResolver resolver = new BuiltInNameResolver(() -> {
+            try {
+                dns.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "controller.example.org";
+        }, executor, 0);
+
+        // A slow lookup blocks neither getName() nor await() for long
+        assertEquals(Constants.GEARMAN_DEFAULT_EXECUTOR_NAME, resolver.getName());
+        assertEquals(Constants.GEARMAN_DEFAULT_EXECUTOR_NAME, resolver.await(50));
+
+        dns.countDown();
+        assertEquals("controller.example.org", resolver.await(10000));
+        assertEquals("controller.example.org", resolver.getName());
+    }
+
+    @Test
+    public void testCached() throws Exception {
+        final AtomicInteger lookups = new AtomicInteger();
+        BuiltInNameResolver resolver = new BuiltInNameResolver(
+            () -> "controller-" + lookups.incrementAndGet(), executor, 0);
+
+        assertEquals("controller-1", resolver.await(10000));
+        assertEquals("controller-1", resolver.await(10000));
+        assertEquals("controller-1", resolver.refresh().get());
+        assertEquals(1, lookups.get());
+    }
+
+    @Test
+    public void testRefreshedWhenStale() throws Exception {
+        final AtomicInteger lookups = new AtomicInteger();
+        BuiltInNameResolver resolver = new BuiltInNameResolver(
+            () -> "controller-" + lookups.incrementAndGet(), executor, 500);
+
+        assertEquals("controller-1", resolver.await(10000));
+        Thread.sleep(600);
+        // The stale name is refreshed in the background
+        assertEquals("controller-2", resolver.refresh().get(10, TimeUnit.SECONDS));
+        assertEquals("controller-2", resolver.getName());
+    }
+
+    @Test
+    public void testFailedLookupRetried() throws Exception {
+        final AtomicInteger lookups = new AtomicInteger();
+        BuiltInNameResolver resolver = new BuiltInNameResolver(() -> {
+            if (lookups.incrementAndGet() == 1) {
+                throw new IllegalStateException("No network yet");
+            }
+            return "controller";
+        }, executor, 0);
+
+        assertEquals(Constants.GEARMAN_DEFAULT_EXECUTOR_NAME, resolver.await(10000));
+        assertEquals("controller", resolver.await(10000));
+        assertEquals(2, lookups.get());
+    }
+}
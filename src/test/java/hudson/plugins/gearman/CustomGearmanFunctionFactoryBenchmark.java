@@ -0,0 +1,71 @@
+/*
+ *
+ * Copyright 2026 Jenkins project contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package hudson.plugins.gearman;
+
+import java.lang.reflect.Constructor;
+
+import hudson.model.Computer;
+import jenkins.benchmark.jmh.JmhBenchmark;
+
+import org.gearman.worker.GearmanFunction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Compares creating a function for a job through the cached constructor
+ * handle of {@link CustomGearmanFunctionFactory} with the reflective
+ * lookup it used to do for every job.
+ */
+@JmhBenchmark
+public class CustomGearmanFunctionFactoryBenchmark {
+
+    private static final String CLASS_NAME =
+        CustomGearmanFunctionFactoryTest.NullFunction.class.getName();
+
+    @State(Scope.Benchmark)
+    public static class FactoryState {
+        CustomGearmanFunctionFactory factory;
+        MyGearmanWorkerImpl worker;
+
+        @Setup
+        public void setUp() {
+            factory = new CustomGearmanFunctionFactory("build:lemon", CLASS_NAME,
+                                                       null, null, "built-in");
+            worker = mock(MyGearmanWorkerImpl.class);
+        }
+    }
+
+    @Benchmark
+    public GearmanFunction methodHandle(FactoryState state) {
+        return state.factory.getFunction(state.worker);
+    }
+
+    @Benchmark
+    public GearmanFunction reflection(FactoryState state) throws Exception {
+        Class<?> c = Class.forName(CLASS_NAME);
+        Constructor<?> constructor = c.getConstructor(GearmanProject.class,
+            Computer.class, String.class, MyGearmanWorkerImpl.class);
+        return (GearmanFunction) constructor.newInstance(null, null, "built-in",
+                                                         state.worker);
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ *
+ * Copyright 2026 Jenkins project contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package hudson.plugins.gearman;
+import hudson.model.Computer;
+import hudson.model.Job;
+
+import java.util.Collections;
+
+import org.gearman.client.GearmanJobResult;
+import org.gearman.worker.AbstractGearmanFunction;
+import org.gearman.worker.GearmanFunction;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test for the {@link CustomGearmanFunctionFactory} class.
+ */
+public class CustomGearmanFunctionFactoryTest {
+
+    private final MyGearmanWorkerImpl worker = mock(MyGearmanWorkerImpl.class);
+
+    public static class NullFunction extends AbstractGearmanFunction {
+
+        final String builtInName;
+
+        public NullFunction(GearmanProject project, Computer computer,
+                            String builtInName, MyGearmanWorkerImpl worker) {
+            this.builtInName = builtInName;
+        }
+
+        @Override
+        public GearmanJobResult executeFunction() {
+            return null;
+        }
+    }
+
+    public static class FailingFunction extends NullFunction {
+
+        public FailingFunction(GearmanProject project, Computer computer,
+                               String builtInName, MyGearmanWorkerImpl worker) {
+            super(project, computer, builtInName, worker);
+            throw new IllegalStateException("lemon");
+        }
+    }
+
+    public static class NotAFunction {
+
+        public NotAFunction(GearmanProject project, Computer computer,
+                            String builtInName, MyGearmanWorkerImpl worker) {
+        }
+    }
+
+    private static CustomGearmanFunctionFactory factory(Class<?> c) {
+        return new CustomGearmanFunctionFactory("build:lemon", c.getName(),
+                                                null, null, "built-in");
+    }
+
+    @Test
+    public void testGetFunction() {
+        CustomGearmanFunctionFactory factory = factory(NullFunction.class);
+
+        GearmanFunction first = factory.getFunction(worker);
+        GearmanFunction second = factory.getFunction(worker);
+
+        assertTrue(first instanceof NullFunction);
+        assertEquals("built-in", ((NullFunction) first).builtInName);
+        assertNotSame(first, second);
+        assertSame(CustomGearmanFunctionFactory.constructor(NullFunction.class.getName()),
+                   CustomGearmanFunctionFactory.constructor(NullFunction.class.getName()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetFunctionOutsideWorker() {
+        factory(NullFunction.class).getFunction();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetFunctionForNoWorker() {
+        factory(NullFunction.class).getFunction(null);
+    }
+
+    @Test
+    public void testUnplannedFactoriesArePruned() {
+        Computer computer = mock(Computer.class);
+        GearmanProject project = mock(GearmanProject.class);
+        when(project.getJob()).thenReturn(mock(Job.class));
+        String className = NullFunction.class.getName();
+        CustomGearmanFunctionFactory lemon = CustomGearmanFunctionFactory.get(
+            "build:lemon", className, project, computer, "built-in");
+        CustomGearmanFunctionFactory.get("build:lime", className, project, computer, "built-in");
+
+        assertSame(lemon, CustomGearmanFunctionFactory.get(
+            "build:lemon", className, project, computer, "built-in"));
+        assertEquals(2, CustomGearmanFunctionFactory.size(computer));
+
+        CustomGearmanFunctionFactory.retain(computer, Collections.singleton("build:lemon"));
+        assertEquals(1, CustomGearmanFunctionFactory.size(computer));
+        assertSame(lemon, CustomGearmanFunctionFactory.get(
+            "build:lemon", className, project, computer, "built-in"));
+
+        CustomGearmanFunctionFactory.release(computer);
+        assertEquals(0, CustomGearmanFunctionFactory.size(computer));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNotAFunction() {
+        factory(NotAFunction.class).getFunction(worker);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoSuchClass() {
+        new CustomGearmanFunctionFactory("build:lemon", "hudson.plugins.gearman.NoSuchFunction",
+                                         null, null, "built-in").getFunction(worker);
+    }
+
+    @Test
+    public void testConstructorFailure() {
+        try {
+            factory(FailingFunction.class).getFunction(worker);
+            fail("Expected the function construction to fail");
+        } catch (IllegalStateException e) {
+            assertEquals("lemon", e.getCause().getMessage());
+        }
+    }
+}
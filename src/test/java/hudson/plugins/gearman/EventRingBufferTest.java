@@ -0,0 +1,193 @@
+/*
+ *
+ * Copyright 2026 Jenkins project contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package hudson.plugins.gearman;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CountDownLatch;
+
+import org.gearman.common.GearmanJobServerSession;
+import org.gearman.common.GearmanPacket;
+import org.gearman.common.GearmanPacketImpl;
+import org.gearman.common.GearmanPacketMagic;
+import org.gearman.common.GearmanPacketType;
+import org.gearman.common.GearmanSessionEvent;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Test for the {@link EventRingBuffer} class.
+ */
+public class EventRingBufferTest {
+
+    private final GearmanJobServerSession session = mock(GearmanJobServerSession.class);
+
+    private GearmanSessionEvent event(GearmanPacketType type) {
+        GearmanPacket packet = new GearmanPacketImpl(GearmanPacketMagic.RES, type, new byte[0]);
+        return new GearmanSessionEvent(packet, session);
+    }
+
+    @Test
+    public void testFifo() {
+        EventRingBuffer buffer = new EventRingBuffer(4);
+        GearmanSessionEvent first = event(GearmanPacketType.NO_JOB);
+        GearmanSessionEvent second = event(GearmanPacketType.NOOP);
+
+        assertTrue(buffer.isEmpty());
+        assertTrue(buffer.offer(first));
+        assertTrue(buffer.offer(second));
+        assertSame(first, buffer.peek());
+        assertSame(first, buffer.poll());
+        assertSame(second, buffer.poll());
+        assertNull(buffer.poll());
+    }
+
+    @Test
+    public void testCapacityIsPowerOfTwo() {
+        assertEquals(64, new EventRingBuffer(64).capacity());
+        assertEquals(8, new EventRingBuffer(5).capacity());
+    }
+
+    @Test
+    public void testOverflowCoalescesNoop() {
+        EventRingBuffer buffer = new EventRingBuffer(2);
+        buffer.offer(event(GearmanPacketType.NO_JOB));
+        buffer.offer(event(GearmanPacketType.NO_JOB));
+        GearmanSessionEvent noop = event(GearmanPacketType.NOOP);
+
+        assertTrue(buffer.offer(noop));
+        assertTrue(buffer.offer(event(GearmanPacketType.NOOP)));
+        assertFalse(buffer.hasOverflowed());
+
+        buffer.poll();
+        buffer.poll();
+        // Only one of the coalesced NOOPs comes out
+        assertEquals(GearmanPacketType.NOOP, buffer.poll().getPacket().getPacketType());
+        assertNull(buffer.poll());
+    }
+
+    @Test
+    public void testOverflowRefusesOtherEvents() {
+        EventRingBuffer buffer = new EventRingBuffer(2);
+        buffer.offer(event(GearmanPacketType.NO_JOB));
+        buffer.offer(event(GearmanPacketType.NO_JOB));
+
+        assertFalse(buffer.offer(event(GearmanPacketType.JOB_ASSIGN)));
+        assertTrue(buffer.hasOverflowed());
+
+        buffer.advanceEpoch();
+        assertFalse(buffer.hasOverflowed());
+    }
+
+    @Test
+    public void testAdvanceEpochDropsPendingEvents() {
+        EventRingBuffer buffer = new EventRingBuffer(4);
+        buffer.offer(event(GearmanPacketType.NO_JOB));
+        buffer.offer(event(GearmanPacketType.NO_JOB));
+
+        buffer.advanceEpoch();
+        GearmanSessionEvent fresh = event(GearmanPacketType.NOOP);
+        buffer.offer(fresh);
+
+        assertSame(fresh, buffer.poll());
+        assertNull(buffer.poll());
+        // The slots of the dropped events can be used again
+        for (int i = 0; i < 4; i++) {
+            assertTrue(buffer.offer(event(GearmanPacketType.NO_JOB)));
+        }
+    }
+
+    /*
+     * Queueing and taking events, like the shared NOOP and NO_JOB of a
+     * session, must not allocate.
+     */
+    @Test
+    public void testOfferAndPollAllocateNothing() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        EventRingBuffer buffer = new EventRingBuffer(64);
+        GearmanSessionEvent noop = new GearmanSessionEvent(GearmanPacketCodec.NOOP, session);
+        GearmanSessionEvent noJob = new GearmanSessionEvent(GearmanPacketCodec.NO_JOB, session);
+
+        int iterations = 100000;
+        long threadId = Thread.currentThread().getId();
+        long allocated = 0;
+        // The first rounds warm up the JIT
+        for (int round = 0; round < 3; round++) {
+            long before = threads.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < iterations; i++) {
+                buffer.offer(noop);
+                buffer.offer(noJob);
+                buffer.poll();
+                buffer.peek();
+                buffer.poll();
+            }
+            allocated = threads.getThreadAllocatedBytes(threadId) - before;
+        }
+
+        // Tolerate the odd allocation of the measurement itself
+        assertTrue("Allocated " + allocated + " bytes in " + iterations + " iterations",
+                   allocated < iterations / 10);
+    }
+
+    @Test
+    public void testConcurrentProducers() throws Exception {
+        final EventRingBuffer buffer = new EventRingBuffer(64);
+        final int producers = 4;
+        final int perProducer = 10000;
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            threads[p] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                GearmanSessionEvent event = event(GearmanPacketType.NO_JOB);
+                for (int i = 0; i < perProducer; i++) {
+                    while (!buffer.offer(event)) {
+                        Thread.yield();
+                    }
+                }
+            });
+            threads[p].start();
+        }
+
+        start.countDown();
+        int received = 0;
+        long deadline = System.currentTimeMillis() + 30000;
+        while (received < producers * perProducer && System.currentTimeMillis() < deadline) {
+            if (buffer.poll() != null) {
+                received++;
+            }
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+
+        assertEquals(producers * perProducer, received);
+        assertNull(buffer.poll());
+    }
+}
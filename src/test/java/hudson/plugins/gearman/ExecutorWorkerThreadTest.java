@@ -24,8 +24,12 @@ import hudson.model.Project;
 import hudson.model.labels.LabelAtom;
 import hudson.slaves.DumbSlave;
 
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Set;
 
+import org.gearman.worker.GearmanFunctionFactory;
+
 import org.jenkinsci.plugins.workflow.job.WorkflowJob;
 import org.junit.After;
 import org.junit.Before;
@@ -91,6 +95,55 @@ public class ExecutorWorkerThreadTest{
 
     }
 
+    /*
+     * This test verifies that the workers of a node share their function
+     * factories instead of each holding a copy per function
+     */
+    @Test
+    public void testRegisterJobs_SharedFactories() throws Exception {
+
+        for (String name : new String[] {"lemon", "lime", "orange"}) {
+            Project<?, ?> project = j.createFreeStyleProject(name);
+            project.setAssignedLabel(new LabelAtom("linux"));
+        }
+
+        Set<GearmanFunctionFactory> factories =
+            Collections.newSetFromMap(new IdentityHashMap<GearmanFunctionFactory, Boolean>());
+        int registered = 0;
+        for (int i = 0; i < 4; i++) {
+            ExecutorWorkerThread executor = new ExecutorWorkerThread("GearmanServer", 4730, "MyWorker" + i, slave.toComputer(), "built-in", new NoopAvailabilityMonitor());
+            executor.testInitWorker();
+            executor.registerJobs();
+            registered += executor.getFunctionFactories().size();
+            factories.addAll(executor.getFunctionFactories());
+        }
+
+        // 3 projects with and without label, on 4 workers
+        assertEquals(24, registered);
+        assertEquals(6, factories.size());
+    }
+
+    /*
+     * This test verifies that a node-level worker registers the same
+     * functions as the per-executor workers of that node
+     */
+    @Test
+    public void testRegisterJobs_NodeWorker() throws Exception {
+
+        Project<?, ?> lemon = j.createFreeStyleProject("lemon");
+        lemon.setAssignedLabel(new LabelAtom("linux"));
+
+        AbstractWorkerThread oneiric = new NodeWorkerThread("GearmanServer", 4730, "MyWorker", slave.toComputer(), "built-in", new NoopAvailabilityMonitor());
+        oneiric.testInitWorker();
+        oneiric.registerJobs();
+        Set<String> functions = oneiric.worker.getRegisteredFunctions();
+
+        assertEquals(2, functions.size());
+        assertTrue(functions.contains("build:lemon"));
+        assertTrue(functions.contains("build:lemon:linux"));
+
+    }
+
     /*
      * This test verifies that no gearman functions are registered
      * for projects that contain labels that do not match labels on a slave node
@@ -0,0 +1,345 @@
+/*
+ *
+ * Copyright 2026 Jenkins project contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package hudson.plugins.gearman;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+
+import org.gearman.common.GearmanPacketImpl;
+import org.gearman.common.GearmanPacketMagic;
+import org.gearman.common.GearmanPacketType;
+
+/*
+ * A minimal gearman server on loopback for testing transports and
+ * workers.  It remembers the abilities of its workers, answers ECHO_REQ,
+ * assigns the jobs added with addJob() to the workers which can do them
+ * and records their results.  A GRAB_JOB without a matching job gets a
+ * NO_JOB, and sleeping workers get a NOOP once there is one.
+ */
+public class FakeGearmanServer implements AutoCloseable {
+
+    private static class Job {
+        final String function;
+        final String handle;
+        final byte[] data;
+
+        Job(String function, String handle, byte[] data) {
+            this.function = function;
+            this.handle = handle;
+            this.data = data;
+        }
+    }
+
+    private static class Client {
+        final SocketChannel channel;
+        final Set<String> abilities = new HashSet<String>();
+        boolean sleeping = false;
+
+        Client(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    private final ServerSocketChannel server;
+    // All state below is guarded by this
+    private final List<Client> clients = new ArrayList<Client>();
+    private final LinkedList<Job> jobs = new LinkedList<Job>();
+    private final Map<String, GearmanPacketType> results = new HashMap<String, GearmanPacketType>();
+    private final Map<GearmanPacketType, Integer> received =
+        new EnumMap<GearmanPacketType, Integer>(GearmanPacketType.class);
+    private final Thread acceptor;
+    private volatile boolean echoing = true;
+
+    public FakeGearmanServer() throws IOException {
+        this(0);
+    }
+
+    /*
+     * A server on the given port, or on any free port if 0.
+     */
+    public FakeGearmanServer(int port) throws IOException {
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress("localhost", port));
+        acceptor = new Thread(this::accept, "Fake gearman server");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    /*
+     * The abilities of all connected workers.
+     */
+    public synchronized Set<String> getAbilities() {
+        Set<String> all = new HashSet<String>();
+        for (Client client : clients) {
+            all.addAll(client.abilities);
+        }
+        return all;
+    }
+
+    /*
+     * Whether ECHO_REQ are answered, a server which doesn't looks hung.
+     */
+    public void setEchoing(boolean echoing) {
+        this.echoing = echoing;
+    }
+
+    public synchronized int getClientCount() {
+        return clients.size();
+    }
+
+    /*
+     * Number of packets of the type received from all workers so far.
+     */
+    public synchronized int getReceived(GearmanPacketType type) {
+        Integer count = received.get(type);
+        return count == null ? 0 : count;
+    }
+
+    /*
+     * The last WORK_COMPLETE, WORK_FAIL or WORK_EXCEPTION of each job.
+     */
+    public synchronized Map<String, GearmanPacketType> getResults() {
+        return new HashMap<String, GearmanPacketType>(results);
+    }
+
+    /*
+     * Queue a job and wake the sleeping workers which can do it.
+     */
+    public synchronized void addJob(String function, String handle, byte[] data)
+            throws IOException {
+        jobs.add(new Job(function, handle, data));
+        for (Client client : clients) {
+            if (client.sleeping && client.abilities.contains(function)) {
+                client.sleeping = false;
+                reply(client, GearmanPacketType.NOOP, new byte[0]);
+            }
+        }
+    }
+
+    /*
+     * Send a NOOP to every worker, whether sleeping or not.
+     */
+    public synchronized void noopAll() throws IOException {
+        for (Client client : clients) {
+            client.sleeping = false;
+            reply(client, GearmanPacketType.NOOP, new byte[0]);
+        }
+    }
+
+    /*
+     * Wait up to five seconds, or the timeout, for the condition to hold.
+     */
+    public static boolean await(BooleanSupplier condition) throws InterruptedException {
+        return await(condition, 5000);
+    }
+
+    public static boolean await(BooleanSupplier condition, long timeoutMillis)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() >= deadline) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    /*
+     * Drop the connections of all clients.
+     */
+    public synchronized void disconnectAll() throws IOException {
+        for (Client client : clients) {
+            client.channel.close();
+        }
+        clients.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+        disconnectAll();
+    }
+
+    private void accept() {
+        try {
+            while (true) {
+                SocketChannel channel = server.accept();
+                final Client client = new Client(channel);
+                synchronized (this) {
+                    clients.add(client);
+                }
+                Thread t = new Thread(() -> serve(client), "Fake gearman client");
+                t.setDaemon(true);
+                t.start();
+            }
+        } catch (IOException e) {
+            // Closed
+        }
+    }
+
+    private void serve(Client client) {
+        ByteBuffer header = ByteBuffer.allocate(GearmanPacketCodec.HEADER_SIZE);
+        try {
+            while (true) {
+                header.clear();
+                if (!readFully(client.channel, header)) {
+                    return;
+                }
+                header.flip();
+                header.getInt();
+                GearmanPacketType type = GearmanPacketCodec.typeOf(header.getInt());
+                ByteBuffer body = ByteBuffer.allocate(header.getInt());
+                if (!readFully(client.channel, body)) {
+                    return;
+                }
+                handle(client, type, body.array());
+            }
+        } catch (IOException e) {
+            // Disconnected
+        } finally {
+            synchronized (this) {
+                clients.remove(client);
+            }
+        }
+    }
+
+    private synchronized void handle(Client client, GearmanPacketType type, byte[] data)
+            throws IOException {
+        Integer count = received.get(type);
+        received.put(type, count == null ? 1 : count + 1);
+        switch (type) {
+            case CAN_DO:
+                client.abilities.add(new String(data, StandardCharsets.UTF_8));
+                break;
+            case CANT_DO:
+                client.abilities.remove(new String(data, StandardCharsets.UTF_8));
+                break;
+            case RESET_ABILITIES:
+                client.abilities.clear();
+                break;
+            case ECHO_REQ:
+                if (echoing) {
+                    reply(client, GearmanPacketType.ECHO_RES, data);
+                }
+                break;
+            case GRAB_JOB:
+            case GRAB_JOB_UNIQ:
+                Job job = nextJob(client);
+                if (job == null) {
+                    reply(client, GearmanPacketType.NO_JOB, new byte[0]);
+                } else if (type == GearmanPacketType.GRAB_JOB) {
+                    reply(client, GearmanPacketType.JOB_ASSIGN,
+                          join(job.handle, job.function, job.data));
+                } else {
+                    reply(client, GearmanPacketType.JOB_ASSIGN_UNIQ,
+                          join(job.handle, job.function, job.handle, job.data));
+                }
+                break;
+            case PRE_SLEEP:
+                client.sleeping = true;
+                for (Job queued : jobs) {
+                    if (client.abilities.contains(queued.function)) {
+                        client.sleeping = false;
+                        reply(client, GearmanPacketType.NOOP, new byte[0]);
+                        break;
+                    }
+                }
+                break;
+            case WORK_COMPLETE:
+            case WORK_FAIL:
+            case WORK_EXCEPTION:
+                int end = 0;
+                while (end < data.length && data[end] != 0) {
+                    end++;
+                }
+                results.put(new String(data, 0, end, StandardCharsets.UTF_8), type);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private Job nextJob(Client client) {
+        for (Iterator<Job> it = jobs.iterator(); it.hasNext(); ) {
+            Job job = it.next();
+            if (client.abilities.contains(job.function)) {
+                it.remove();
+                return job;
+            }
+        }
+        return null;
+    }
+
+    /*
+     * The arguments of a packet, separated by NUL bytes.
+     */
+    private static byte[] join(Object... args) {
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        for (int i = 0; i < args.length; i++) {
+            if (i > 0) {
+                buffer.put((byte) 0);
+            }
+            buffer.put(args[i] instanceof byte[] ? (byte[]) args[i] :
+                       ((String) args[i]).getBytes(StandardCharsets.UTF_8));
+        }
+        byte[] data = new byte[buffer.position()];
+        buffer.flip();
+        buffer.get(data);
+        return data;
+    }
+
+    private static boolean readFully(SocketChannel client, ByteBuffer buffer)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            if (client.read(buffer) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void reply(Client client, GearmanPacketType type, byte[] data)
+            throws IOException {
+        ByteBuffer frame = ByteBuffer.wrap(
+            new GearmanPacketImpl(GearmanPacketMagic.RES, type, data).toBytes());
+        while (frame.hasRemaining()) {
+            client.channel.write(frame);
+        }
+    }
+}
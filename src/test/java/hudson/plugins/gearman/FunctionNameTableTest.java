@@ -0,0 +1,122 @@
+/*
+ *
+ * Copyright 2026 Jenkins project contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package hudson.plugins.gearman;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+
+import org.gearman.common.GearmanPacket;
+import org.gearman.common.GearmanPacketImpl;
+import org.gearman.common.GearmanPacketMagic;
+import org.gearman.common.GearmanPacketType;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test for the {@link FunctionNameTable} class.
+ */
+public class FunctionNameTableTest {
+
+    @Test
+    public void testIdsAreStable() {
+        int lemon = FunctionNameTable.acquire("build:lemon:linux");
+        int lime = FunctionNameTable.acquire("build:lime:linux");
+
+        assertNotEquals(lemon, lime);
+        assertEquals(lemon, FunctionNameTable.acquire(new String("build:lemon:linux")));
+        assertEquals("build:lemon:linux", FunctionNameTable.name(lemon));
+        assertArrayEquals("build:lemon:linux".getBytes(StandardCharsets.UTF_8),
+                          FunctionNameTable.bytes(lemon));
+        FunctionNameTable.release(lemon);
+        FunctionNameTable.release(lemon);
+        FunctionNameTable.release(lime);
+    }
+
+    @Test
+    public void testNamesAreCanonical() {
+        int id = FunctionNameTable.acquire(new String("build:orange"));
+        int again = FunctionNameTable.acquire(new String("build:orange"));
+
+        assertSame(FunctionNameTable.name(id), FunctionNameTable.name(again));
+        FunctionNameTable.release(id);
+        FunctionNameTable.release(again);
+    }
+
+    @Test
+    public void testRegistrationPackets() {
+        int id = FunctionNameTable.acquire("build:lemon");
+        GearmanPacket canDo = FunctionNameTable.canDo(id);
+        GearmanPacket expected = new GearmanPacketImpl(GearmanPacketMagic.REQ,
+            GearmanPacketType.CAN_DO, "build:lemon".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(GearmanPacketType.CANT_DO, FunctionNameTable.cantDo(id).getPacketType());
+        assertArrayEquals(expected.toBytes(), canDo.toBytes());
+        ByteBuffer frame = GearmanPacketCodec.encode(canDo);
+        byte[] bytes = new byte[frame.remaining()];
+        frame.get(bytes);
+        assertArrayEquals(expected.toBytes(), bytes);
+        FunctionNameTable.release(id);
+    }
+
+    @Test
+    public void testReleasedIdsAreReused() {
+        int size = FunctionNameTable.size();
+        int id = FunctionNameTable.acquire("build:kiwi");
+        FunctionNameTable.acquire(id);
+        FunctionNameTable.release(id);
+        assertEquals("build:kiwi", FunctionNameTable.name(id));
+
+        FunctionNameTable.release(id);
+        assertEquals(size, FunctionNameTable.size());
+        assertEquals(id, FunctionNameTable.acquire("build:papaya"));
+        assertEquals("build:papaya", FunctionNameTable.name(id));
+        FunctionNameTable.release(id);
+    }
+
+    @Test
+    public void testChurnIsBounded() {
+        int size = FunctionNameTable.size();
+        int capacity = FunctionNameTable.capacity();
+        BitSet held = new BitSet();
+        // Jobs come and go, a hundred of them registered at any time
+        for (int i = 0; i < 10000; i++) {
+            held.set(FunctionNameTable.acquire("build:churn:" + i));
+            if (i >= 100) {
+                int oldest = FunctionNameTable.acquire("build:churn:" + (i - 100));
+                FunctionNameTable.release(oldest);
+                FunctionNameTable.release(oldest);
+                held.clear(oldest);
+            }
+        }
+
+        assertEquals(size + 100, FunctionNameTable.size());
+        // One more name than held while the next one is acquired
+        assertTrue(FunctionNameTable.capacity() <= Math.max(capacity, size + 101));
+        FunctionNameTable.release(held);
+        assertEquals(size, FunctionNameTable.size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testReleasedIdCanNotBeAcquired() {
+        int id = FunctionNameTable.acquire("build:durian");
+        FunctionNameTable.release(id);
+        FunctionNameTable.acquire(id);
+    }
+}
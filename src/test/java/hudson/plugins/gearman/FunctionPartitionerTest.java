@@ -0,0 +1,122 @@
+/*
+ *
+ * Copyright 2026 Jenkins project contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package hudson.plugins.gearman;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test for the {@link FunctionPartitioner} class.
+ */
+public class FunctionPartitionerTest {
+
+    private static final int FUNCTIONS = 10000;
+
+    private static Map<String, String> owners(FunctionPartitioner partitioner) {
+        Map<String, String> owners = new HashMap<String, String>();
+        for (int i = 0; i < FUNCTIONS; i++) {
+            String function = "build:project-" + i;
+            owners.put(function, partitioner.owner(function).toString());
+        }
+        return owners;
+    }
+
+    @Test
+    public void testParse() {
+        FunctionPartitioner partitioner = new FunctionPartitioner(" gm1:4730, gm2 ,gm3:4731,");
+        assertEquals(3, partitioner.getServers().size());
+        assertEquals("gm1:4730", partitioner.getServers().get(0).toString());
+        assertEquals("gm2:4730", partitioner.getServers().get(1).toString());
+        assertEquals("gm3:4731", partitioner.getServers().get(2).toString());
+        assertTrue(partitioner.getServers().get(2).is("gm3", 4731));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoServer() {
+        new FunctionPartitioner(" , ");
+    }
+
+    @Test
+    public void testSingleServer() {
+        FunctionPartitioner partitioner = new FunctionPartitioner("gm1:4730");
+        assertTrue(partitioner.owns("gm1", 4730, "build:lemon"));
+        assertFalse(partitioner.owns("gm1", 4731, "build:lemon"));
+    }
+
+    @Test
+    public void testServersOwning() {
+        FunctionPartitioner partitioner = new FunctionPartitioner("gm1:4730,gm2:4730,gm3:4730");
+        String function = "build:lemon";
+        FunctionPartitioner.Server owner = partitioner.owner(function);
+
+        assertEquals(Collections.singletonList(owner),
+                     partitioner.serversOwning(Collections.singleton(function)));
+        assertTrue(partitioner.serversOwning(Collections.<String>emptySet()).isEmpty());
+        // Every server owns some of many functions, listed in order
+        assertEquals(partitioner.getServers(),
+                     partitioner.serversOwning(owners(partitioner).keySet()));
+
+        List<String> two = Arrays.asList(function, "build:lime");
+        for (FunctionPartitioner.Server server : partitioner.serversOwning(two)) {
+            assertTrue(partitioner.owns(server.getHost(), server.getPort(), function) ||
+                       partitioner.owns(server.getHost(), server.getPort(), "build:lime"));
+        }
+    }
+
+    @Test
+    public void testBalanced() {
+        Map<String, String> owners = owners(new FunctionPartitioner("gm1:4730,gm2:4730,gm3:4730,gm4:4730"));
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        for (String owner : owners.values()) {
+            counts.merge(owner, 1, Integer::sum);
+        }
+        assertEquals(4, counts.size());
+        for (int count : counts.values()) {
+            // 2500 each when perfectly balanced
+            assertTrue("unbalanced: " + counts, count > 1500 && count < 3500);
+        }
+    }
+
+    @Test
+    public void testMinimalChurn() {
+        Map<String, String> before = owners(new FunctionPartitioner("gm1:4730,gm2:4730,gm3:4730"));
+        // The order of the list does not matter
+        assertEquals(before, owners(new FunctionPartitioner("gm3:4730,gm1:4730,gm2:4730")));
+
+        Map<String, String> after = owners(new FunctionPartitioner("gm1:4730,gm2:4730,gm3:4730,gm4:4730"));
+        int moved = 0;
+        for (Map.Entry<String, String> e : before.entrySet()) {
+            String owner = after.get(e.getKey());
+            if (!owner.equals(e.getValue())) {
+                // Functions only move to the new server
+                assertEquals("gm4:4730", owner);
+                moved++;
+            }
+        }
+        // About a quarter of the functions move
+        assertTrue("moved " + moved, moved > FUNCTIONS / 8 && moved < FUNCTIONS * 3 / 8);
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ *
+ * Copyright 2026 Jenkins project contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package hudson.plugins.gearman;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.gearman.common.GearmanPacket;
+import org.gearman.common.GearmanPacket.DataComponentName;
+import org.gearman.common.GearmanPacketImpl;
+import org.gearman.common.GearmanPacketMagic;
+import org.gearman.common.GearmanPacketType;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test for the {@link GearmanPacketCodec} class.
+ */
+public class GearmanPacketCodecTest {
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        byte[] result = new byte[buffer.remaining()];
+        buffer.duplicate().get(result);
+        return result;
+    }
+
+    @Test
+    public void testEncodeMatchesLibrary() {
+        GearmanPacket canDo = new GearmanPacketImpl(GearmanPacketMagic.REQ,
+            GearmanPacketType.CAN_DO, "build:lemon".getBytes(StandardCharsets.UTF_8));
+
+        ByteBuffer frame = GearmanPacketCodec.encode(canDo);
+
+        assertArrayEquals(canDo.toBytes(), bytes(frame));
+        GearmanPacketCodec.release(frame);
+    }
+
+    @Test
+    public void testConstantPacketsAreShared() {
+        ByteBuffer first = GearmanPacketCodec.encode(GearmanPacketCodec.GRAB_JOB_UNIQ);
+        ByteBuffer second = GearmanPacketCodec.encode(GearmanPacketCodec.GRAB_JOB_UNIQ);
+
+        assertTrue(first.isReadOnly());
+        assertArrayEquals(GearmanPacketCodec.GRAB_JOB_UNIQ.toBytes(), bytes(first));
+        // Writing one view must not consume the other
+        first.position(first.limit());
+        assertEquals(GearmanPacketCodec.HEADER_SIZE, second.remaining());
+    }
+
+    @Test
+    public void testDecodeRoundTrip() {
+        byte[] data = "H:lemon:1\0build:lemon\0uuid\0{}".getBytes(StandardCharsets.UTF_8);
+        GearmanPacket assign = new GearmanPacketImpl(GearmanPacketMagic.RES,
+            GearmanPacketType.JOB_ASSIGN_UNIQ, data);
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        buffer.put(assign.toBytes());
+        buffer.put(GearmanPacketCodec.NOOP.toBytes());
+        buffer.put(GearmanPacketCodec.NO_JOB.toBytes());
+        buffer.flip();
+
+        GearmanPacket decoded = GearmanPacketCodec.decode(buffer);
+        assertEquals(GearmanPacketType.JOB_ASSIGN_UNIQ, decoded.getPacketType());
+        assertArrayEquals("build:lemon".getBytes(StandardCharsets.UTF_8),
+            decoded.getDataComponentValue(DataComponentName.FUNCTION_NAME));
+        assertSame(GearmanPacketCodec.NOOP, GearmanPacketCodec.decode(buffer));
+        assertSame(GearmanPacketCodec.NO_JOB, GearmanPacketCodec.decode(buffer));
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    public void testFrameSizeOfPartialFrame() {
+        byte[] frame = GearmanPacketCodec.NOOP.toBytes();
+        ByteBuffer partial = ByteBuffer.wrap(frame, 0, 8);
+
+        assertEquals(-1, GearmanPacketCodec.frameSize(partial));
+        assertEquals(GearmanPacketCodec.HEADER_SIZE,
+                     GearmanPacketCodec.frameSize(ByteBuffer.wrap(frame)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFrameSizeRejectsOverflow() {
+        ByteBuffer buffer = ByteBuffer.allocate(GearmanPacketCodec.HEADER_SIZE);
+        buffer.putInt(GearmanPacketCodec.RES_MAGIC).putInt(11)
+            .putInt(Integer.MAX_VALUE).flip();
+        GearmanPacketCodec.frameSize(buffer);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecodeRejectsBadMagic() {
+        ByteBuffer buffer = ByteBuffer.allocate(GearmanPacketCodec.HEADER_SIZE);
+        buffer.putInt(0x12345678).putInt(6).putInt(0).flip();
+        GearmanPacketCodec.decode(buffer);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecodeRejectsTruncatedAssignment() {
+        GearmanPacket assign = new GearmanPacketImpl(GearmanPacketMagic.RES,
+            GearmanPacketType.JOB_ASSIGN_UNIQ,
+            "H:lemon:1\0build:lemon".getBytes(StandardCharsets.UTF_8));
+        GearmanPacketCodec.decode(ByteBuffer.wrap(assign.toBytes()));
+    }
+
+    @Test
+    public void testDecodeAssignmentWithEmptyData() {
+        GearmanPacket assign = new GearmanPacketImpl(GearmanPacketMagic.RES,
+            GearmanPacketType.JOB_ASSIGN,
+            "H:lemon:1\0build:lemon\0".getBytes(StandardCharsets.UTF_8));
+
+        GearmanPacket decoded = GearmanPacketCodec.decode(ByteBuffer.wrap(assign.toBytes()));
+        assertArrayEquals("H:lemon:1".getBytes(StandardCharsets.UTF_8),
+            decoded.getDataComponentValue(DataComponentName.JOB_HANDLE));
+    }
+
+    @Test
+    public void testBuffersArePooled() {
+        ByteBuffer buffer = GearmanPacketCodec.acquire(100);
+        assertEquals(128, buffer.capacity());
+        buffer.putInt(42);
+        GearmanPacketCodec.release(buffer);
+
+        ByteBuffer again = GearmanPacketCodec.acquire(128);
+        assertEquals(0, again.position());
+        assertEquals(128, again.limit());
+    }
+}
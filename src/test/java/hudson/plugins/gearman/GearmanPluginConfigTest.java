@@ -19,6 +19,7 @@
 package hudson.plugins.gearman;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.mockStatic;
 import static org.mockito.Mockito.when;
@@ -73,4 +74,18 @@ public class GearmanPluginConfigTest {
         assertEquals(Constants.GEARMAN_DEFAULT_ENABLE_PLUGIN,
                 gpc.isEnablePlugin());
     }
+
+    @Test
+    public void testNoPartitionedServers() {
+        assertTrue(gpc.getPartitionedServers().isEmpty());
+    }
+
+    @Test
+    public void testPartitionedServers() {
+        FunctionPartitioner partitioner = new FunctionPartitioner("gm1:4730,gm2:4730");
+        try (MockedStatic<FunctionPartitioner> mocked = mockStatic(FunctionPartitioner.class)) {
+            mocked.when(FunctionPartitioner::get).thenReturn(partitioner);
+            assertEquals(partitioner.getServers(), gpc.getPartitionedServers());
+        }
+    }
 }
@@ -20,6 +20,11 @@ package hudson.plugins.gearman;
 
 import hudson.slaves.DumbSlave;
 
+import java.net.ServerSocket;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
@@ -27,6 +32,8 @@ import org.junit.Test;
 import org.jvnet.hudson.test.JenkinsRule;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Test for the {@link ExecutorWorkerThread} class.
@@ -74,6 +81,30 @@ public class GearmanProxyTest {
         assertEquals(1, gp.getNumExecutors());
     }
 
+    @Test
+    public void testReconcileExecutorWorkers() throws Exception {
+
+        DumbSlave slave = j.createOnlineSlave();
+        gp.createExecutorWorkersOnNode(slave.toComputer());
+
+        // exec: 1 slave
+        assertEquals(1, gp.getNumExecutors());
+
+        slave.setNumExecutors(3);
+        j.jenkins.updateNode(slave);
+        gp.reconcileExecutorWorkers(slave.toComputer());
+
+        // exec: 3 slave
+        assertEquals(slave.toComputer().getExecutors().size(), gp.getNumExecutors());
+
+        slave.setNumExecutors(1);
+        j.jenkins.updateNode(slave);
+        gp.reconcileExecutorWorkers(slave.toComputer());
+
+        // exec: 1 slave
+        assertEquals(slave.toComputer().getExecutors().size(), gp.getNumExecutors());
+    }
+
     @Test
     public void testInitWorkers() {
 
@@ -92,4 +123,136 @@ public class GearmanProxyTest {
         // exec: 2 slaves, 1 built-in + mgmnt: 1
         assertEquals(4, gp.getNumExecutors());
     }
+
+    @Test
+    public void testStopAll() throws Exception {
+
+        gp.initWorkers();
+        assertTrue(gp.isStarted());
+
+        gp.stopAll();
+
+        assertFalse(gp.isStarted());
+        assertEquals(0, gp.getNumExecutors());
+    }
+
+    @Test
+    public void testStopInParallel() throws Exception {
+
+        final CountDownLatch release = new CountDownLatch(1);
+        // exits when interrupted by stop()
+        AbstractWorkerThread polite = new FakeWorkerThread("GearmanServer", 4730, "polite",
+                                                           new NoopAvailabilityMonitor()) {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(60000);
+                } catch (InterruptedException e) {
+                    // stopped
+                }
+            }
+        };
+        // ignores stop() until released
+        AbstractWorkerThread stubborn = new FakeWorkerThread("GearmanServer", 4730, "stubborn",
+                                                             new NoopAvailabilityMonitor()) {
+            @Override
+            public void run() {
+                while (true) {
+                    try {
+                        if (release.await(60, TimeUnit.SECONDS)) {
+                            return;
+                        }
+                    } catch (InterruptedException e) {
+                        // keep going
+                    }
+                }
+            }
+        };
+        polite.start();
+        stubborn.start();
+
+        long start = System.currentTimeMillis();
+        assertEquals(1, GearmanProxy.stopInParallel(Arrays.asList(polite, stubborn), 500));
+        assertTrue(System.currentTimeMillis() - start < 10000);
+        assertFalse(polite.isAlive());
+        assertTrue(stubborn.isAlive());
+
+        release.countDown();
+        assertTrue(stubborn.join(10000));
+    }
+
+    @Test
+    public void testMigrateWorkers() throws Exception {
+
+        gp.initWorkers();
+        assertEquals(3, gp.getNumExecutors());
+
+        // the new workers can't connect, so the old ones are stopped
+        // once the timeout expires
+        Thread handoff = gp.migrateWorkers(100);
+
+        // the old workers are tracked until they exit
+        assertEquals(6, gp.getNumExecutors());
+        handoff.join(10000);
+        assertFalse(handoff.isAlive());
+        assertEquals(3, gp.getNumExecutors());
+    }
+
+    @Test
+    public void testDraining() throws Exception {
+
+        gp.initWorkers();
+        assertFalse(gp.isDraining());
+        assertFalse(gp.isDrained());
+
+        gp.setDraining(true);
+
+        // no build is running, so draining is done right away
+        assertTrue(gp.isDraining());
+        assertEquals(0, gp.getRunningJobs());
+        assertTrue(gp.isDrained());
+
+        // workers started while draining drain too
+        DumbSlave slave = j.createSlave();
+        gp.createExecutorWorkersOnNode(slave.toComputer());
+        assertTrue(gp.isDrained());
+
+        gp.setDraining(false);
+        assertFalse(gp.isDraining());
+        assertFalse(gp.isDrained());
+    }
+
+    @Test
+    public void testMigrationKeepsOldWorkersUntilNewOnesAreReady() throws Exception {
+
+        GearmanPluginConfig config = GearmanPluginConfig.get();
+        int port;
+        try (ServerSocket free = new ServerSocket(0)) {
+            port = free.getLocalPort();
+        }
+        try (FakeGearmanServer from = new FakeGearmanServer()) {
+            config.setHost("localhost");
+            config.setPort(from.getPort());
+            gp.initWorkers();
+            int workers = gp.getNumExecutors();
+            assertTrue(FakeGearmanServer.await(() -> from.getClientCount() == workers));
+
+            // the new server is not up yet, the old workers keep serving
+            config.setPort(port);
+            Thread handoff = gp.migrateWorkers(60000);
+            Thread.sleep(1000);
+            assertEquals(workers, from.getClientCount());
+            assertEquals(2 * workers, gp.getNumExecutors());
+
+            try (FakeGearmanServer to = new FakeGearmanServer(port)) {
+                assertTrue(FakeGearmanServer.await(
+                    () -> to.getClientCount() == workers, 30000));
+                handoff.join(30000);
+                assertFalse(handoff.isAlive());
+                assertTrue(FakeGearmanServer.await(() -> from.getClientCount() == 0));
+                assertEquals(workers, gp.getNumExecutors());
+                gp.stopAll();
+            }
+        }
+    }
 }
@@ -0,0 +1,131 @@
+/*
+ *
+ * Copyright 2026 Jenkins project contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package hudson.plugins.gearman;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import jenkins.benchmark.jmh.JmhBenchmark;
+
+import org.gearman.common.GearmanPacket;
+import org.gearman.common.GearmanPacketImpl;
+import org.gearman.common.GearmanPacketMagic;
+import org.gearman.common.GearmanPacketType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Compares the ECHO round trip latency of a {@link GearmanSocketConnection}
+ * to a fake server over loopback TCP and over a unix domain socket.
+ */
+@JmhBenchmark
+public class GearmanSocketConnectionBenchmark {
+
+    private static final byte[] PAYLOAD = "lemon".getBytes(StandardCharsets.UTF_8);
+
+    @State(Scope.Thread)
+    public static class Connection {
+
+        @Param({"tcp", "unix"})
+        public String transport;
+
+        ServerSocketChannel server;
+        SocketChannel peer;
+        Path dir;
+        GearmanSocketConnection conn;
+        final GearmanPacket ping = new GearmanPacketImpl(GearmanPacketMagic.REQ,
+            GearmanPacketType.ECHO_REQ, PAYLOAD);
+
+        @Setup
+        public void setUp() throws IOException {
+            if (transport.equals("unix")) {
+                dir = Files.createTempDirectory("gearman");
+                Path path = dir.resolve("gearmand.sock");
+                server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+                server.bind(UnixDomainSocketAddress.of(path));
+                conn = new GearmanSocketConnection("unix:" + path, 0);
+            } else {
+                server = ServerSocketChannel.open();
+                server.bind(new InetSocketAddress("localhost", 0));
+                conn = new GearmanSocketConnection("localhost", server.socket().getLocalPort());
+            }
+            conn.open();
+            peer = server.accept();
+            Thread echo = new Thread(this::echo, "Fake gearman echo");
+            echo.setDaemon(true);
+            echo.start();
+        }
+
+        /*
+         * Answer each ECHO_REQ until the connection is closed.
+         */
+        private void echo() {
+            byte[] reply = new GearmanPacketImpl(GearmanPacketMagic.RES,
+                GearmanPacketType.ECHO_RES, PAYLOAD).toBytes();
+            ByteBuffer request = ByteBuffer.allocate(GearmanPacketCodec.HEADER_SIZE + PAYLOAD.length);
+            try {
+                while (true) {
+                    request.clear();
+                    while (request.hasRemaining()) {
+                        if (peer.read(request) < 0) {
+                            return;
+                        }
+                    }
+                    peer.write(ByteBuffer.wrap(reply));
+                }
+            } catch (IOException e) {
+                // Closed by tearDown()
+            }
+        }
+
+        @TearDown
+        public void tearDown() throws IOException {
+            conn.close();
+            peer.close();
+            server.close();
+            if (dir != null) {
+                Files.deleteIfExists(dir.resolve("gearmand.sock"));
+                Files.delete(dir);
+            }
+        }
+    }
+
+    @Benchmark
+    public GearmanPacket echoRoundTrip(Connection c) throws IOException {
+        c.conn.write(c.ping);
+        c.conn.flush();
+        GearmanPacket pong;
+        while ((pong = c.conn.read()) == null) {
+            Thread.onSpinWait();
+        }
+        return pong;
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ *
+ * Copyright 2026 Jenkins project contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package hudson.plugins.gearman;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import org.gearman.common.GearmanPacket;
+import org.gearman.common.GearmanPacketImpl;
+import org.gearman.common.GearmanPacketMagic;
+import org.gearman.common.GearmanPacketType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeNoException;
+
+/**
+ * Test for the {@link GearmanSocketConnection} class.
+ */
+public class GearmanSocketConnectionTest {
+
+    private ServerSocketChannel server;
+    private SocketChannel peer;
+    private GearmanSocketConnection conn;
+
+    @Before
+    public void setUp() throws IOException {
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress("localhost", 0));
+        conn = new GearmanSocketConnection("localhost", server.socket().getLocalPort());
+        conn.open();
+        peer = server.accept();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        conn.close();
+        peer.close();
+        server.close();
+    }
+
+    private static GearmanPacket canDo(String name) {
+        return new GearmanPacketImpl(GearmanPacketMagic.REQ, GearmanPacketType.CAN_DO,
+                                     name.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private byte[] receive(int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (peer.read(buffer) < 0) {
+                break;
+            }
+        }
+        return buffer.array();
+    }
+
+    @Test
+    public void testWritesAreCoalesced() throws IOException {
+        GearmanPacket first = canDo("build:lemon");
+        GearmanPacket second = canDo("build:lime");
+
+        conn.write(first);
+        conn.write(second);
+        conn.write(GearmanPacketCodec.GRAB_JOB_UNIQ);
+        assertEquals(0, conn.getFlushes());
+
+        assertTrue(conn.flush());
+        assertEquals(1, conn.getFlushes());
+        assertFalse(conn.hasBufferedWriteData());
+
+        ByteBuffer expected = ByteBuffer.allocate(256);
+        expected.put(first.toBytes()).put(second.toBytes())
+            .put(GearmanPacketCodec.GRAB_JOB_UNIQ.toBytes()).flip();
+        byte[] bytes = new byte[expected.remaining()];
+        expected.get(bytes);
+        assertArrayEquals(bytes, receive(bytes.length));
+    }
+
+    @Test
+    public void testReadSplitPackets() throws IOException {
+        byte[] data = "H:lemon:1\0build:lemon\0uuid\0{}".getBytes(StandardCharsets.UTF_8);
+        byte[] frame = new GearmanPacketImpl(GearmanPacketMagic.RES,
+            GearmanPacketType.JOB_ASSIGN_UNIQ, data).toBytes();
+
+        peer.write(ByteBuffer.wrap(frame, 0, 5));
+        assertNull(readWhenAvailable());
+
+        peer.write(ByteBuffer.wrap(frame, 5, frame.length - 5));
+        GearmanPacket packet = readWhenAvailable();
+        assertNotNull(packet);
+        assertEquals(GearmanPacketType.JOB_ASSIGN_UNIQ, packet.getPacketType());
+        assertArrayEquals(data, packet.getData());
+    }
+
+    @Test
+    public void testMalformedPacketIsAnIOError() throws IOException {
+        ByteBuffer frame = ByteBuffer.allocate(GearmanPacketCodec.HEADER_SIZE);
+        frame.putInt(0x12345678).putInt(6).putInt(0).flip();
+        peer.write(frame);
+
+        try {
+            readWhenAvailable();
+            fail("Malformed packet accepted");
+        } catch (UncheckedIOException e) {
+            assertTrue(e.getCause().getCause() instanceof IllegalArgumentException);
+        }
+        assertFalse(conn.isOpen());
+    }
+
+    @Test
+    public void testOversizedPacketIsAnIOError() throws IOException {
+        ByteBuffer frame = ByteBuffer.allocate(GearmanPacketCodec.HEADER_SIZE);
+        frame.putInt(GearmanPacketCodec.RES_MAGIC).putInt(11)
+            .putInt(GearmanSocketConnection.MAX_PACKET_SIZE).flip();
+        peer.write(frame);
+
+        try {
+            readWhenAvailable();
+            fail("Oversized packet accepted");
+        } catch (UncheckedIOException e) {
+            assertTrue(e.getCause().getCause() instanceof IllegalArgumentException);
+        }
+        assertFalse(conn.isOpen());
+    }
+
+    @Test
+    public void testOpenUsesTheWorkersCoordinator() throws IOException {
+        int port = server.socket().getLocalPort();
+        ServerCoordinator coordinator = ServerCoordinator.forServer("localhost", port);
+        ServerCoordinator.retain(Collections.<FunctionPartitioner.Server>emptyList());
+
+        GearmanSocketConnection other = new GearmanSocketConnection("localhost", port);
+        other.setCoordinator(coordinator);
+        other.open();
+        try {
+            server.accept().close();
+        } finally {
+            other.close();
+        }
+        // Opening did not bring a second coordinator for the server
+        assertFalse(ServerCoordinator.getServers().containsKey("localhost:" + port));
+    }
+
+    @Test
+    public void testUnixSocketPath() {
+        assertTrue(GearmanSocketConnection.isUnixSocket("/var/run/gearmand.sock"));
+        assertTrue(GearmanSocketConnection.isUnixSocket("unix:gearmand.sock"));
+        assertFalse(GearmanSocketConnection.isUnixSocket("localhost"));
+        assertEquals(UnixDomainSocketAddress.of("gearmand.sock"),
+                     GearmanSocketConnection.address("unix:gearmand.sock", 0));
+    }
+
+    /*
+     * An ECHO round trip to a fake server over a unix domain socket.  See
+     * GearmanSocketConnectionBenchmark for the latency compared to TCP.
+     */
+    @Test
+    public void testUnixSocketRoundTrip() throws Exception {
+        Path dir = Files.createTempDirectory("gearman");
+        Path path = dir.resolve("gearmand.sock");
+        ServerSocketChannel unixServer;
+        try {
+            unixServer = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            unixServer.bind(UnixDomainSocketAddress.of(path));
+        } catch (UnsupportedOperationException e) {
+            assumeNoException(e);
+            return;
+        }
+        GearmanSocketConnection unixConn = new GearmanSocketConnection("unix:" + path, 0);
+        try {
+            unixConn.open();
+            try (SocketChannel unixPeer = unixServer.accept()) {
+                byte[] payload = "lemon".getBytes(StandardCharsets.UTF_8);
+                GearmanPacket ping = new GearmanPacketImpl(GearmanPacketMagic.REQ,
+                    GearmanPacketType.ECHO_REQ, payload);
+                GearmanPacket pong = new GearmanPacketImpl(GearmanPacketMagic.RES,
+                    GearmanPacketType.ECHO_RES, payload);
+                unixConn.write(ping);
+                assertTrue(unixConn.flush());
+
+                ByteBuffer request = ByteBuffer.allocate(ping.toBytes().length);
+                while (request.hasRemaining() && unixPeer.read(request) >= 0) {
+                    // Until the whole request arrived
+                }
+                assertArrayEquals(ping.toBytes(), request.array());
+                unixPeer.write(ByteBuffer.wrap(pong.toBytes()));
+
+                GearmanPacket reply = null;
+                long deadline = System.currentTimeMillis() + 1000;
+                while (reply == null && System.currentTimeMillis() < deadline) {
+                    reply = unixConn.read();
+                }
+                assertNotNull(reply);
+                assertEquals(GearmanPacketType.ECHO_RES, reply.getPacketType());
+                assertArrayEquals(payload, reply.getData());
+            }
+        } finally {
+            unixConn.close();
+            unixServer.close();
+            Files.deleteIfExists(path);
+            Files.delete(dir);
+        }
+    }
+
+    /*
+     * Read until a packet arrived or the sent bytes have surely been
+     * received.
+     */
+    private GearmanPacket readWhenAvailable() {
+        long deadline = System.currentTimeMillis() + 1000;
+        GearmanPacket packet;
+        while ((packet = conn.read()) == null &&
+               System.currentTimeMillis() < deadline) {
+            Thread.yield();
+        }
+        return packet;
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ *
+ * Copyright 2026 Jenkins project contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package hudson.plugins.gearman;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import org.gearman.common.GearmanException;
+import org.gearman.common.GearmanJobServerConnection;
+import org.gearman.common.GearmanJobServerSession;
+import org.gearman.common.GearmanPacket;
+import org.gearman.common.GearmanPacketImpl;
+import org.gearman.common.GearmanPacketMagic;
+import org.gearman.common.GearmanPacketType;
+import org.gearman.common.GearmanServerResponseHandler;
+import org.gearman.common.GearmanTask;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests every {@link GearmanTransport} has to pass, driving a session
+ * against a {@link FakeGearmanServer} the way workers do.
+ */
+public abstract class GearmanTransportConformance {
+
+    private FakeGearmanServer server;
+    private SelectorTransport transport;
+    private GearmanJobServerConnection connection;
+    private Selector selector;
+    private GearmanJobServerSession session;
+
+    protected abstract SelectorTransport createTransport();
+
+    // Collects the responses to a task
+    private static class Responses implements GearmanServerResponseHandler {
+        final List<GearmanPacket> packets = new ArrayList<GearmanPacket>();
+
+        public void handleEvent(GearmanPacket event) {
+            packets.add(event);
+        }
+
+        public boolean isDone() {
+            return !packets.isEmpty();
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        server = new FakeGearmanServer();
+        transport = createTransport();
+        assertTrue(transport.isAvailable());
+        connection = transport.createConnection("localhost", server.getPort());
+        selector = transport.openSelector();
+        session = new GearmanJobServerSession(connection);
+        session.initSession(selector, event -> { });
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        session.closeSession();
+        selector.close();
+        server.close();
+    }
+
+    /*
+     * Drive the session IO until the condition holds, reporting a closed
+     * connection by closing the session like workers do.
+     */
+    private void drive(BooleanSupplier condition) throws IOException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue("Timed out", System.currentTimeMillis() < deadline);
+            if (!session.isInitialized()) {
+                return;
+            }
+            try {
+                session.driveSessionIO();
+                transport.flush(connection);
+            } catch (IOException | UncheckedIOException | GearmanException e) {
+                session.closeSession();
+                continue;
+            }
+            if (!session.isInitialized()) {
+                continue;
+            }
+            try {
+                int interestOps = SelectionKey.OP_READ;
+                if (session.sessionHasDataToWrite()) {
+                    interestOps |= SelectionKey.OP_WRITE;
+                }
+                session.getSelectionKey().interestOps(interestOps);
+            } catch (UncheckedIOException e) {
+                session.closeSession();
+                continue;
+            }
+            selector.select(100);
+            selector.selectedKeys().clear();
+        }
+    }
+
+    private Responses submit(GearmanPacket packet) {
+        Responses responses = new Responses();
+        session.submitTask(new GearmanTask(responses, packet));
+        return responses;
+    }
+
+    @Test
+    public void testEcho() throws IOException {
+        byte[] data = "lemon".getBytes(StandardCharsets.UTF_8);
+        Responses echo = submit(new GearmanPacketImpl(GearmanPacketMagic.REQ,
+            GearmanPacketType.ECHO_REQ, data));
+        drive(echo::isDone);
+
+        assertEquals(1, echo.packets.size());
+        assertEquals(GearmanPacketType.ECHO_RES, echo.packets.get(0).getPacketType());
+        assertArrayEquals(data, echo.packets.get(0).getData());
+    }
+
+    @Test
+    public void testRegisterAndGrab() throws IOException {
+        session.submitTask(new GearmanTask(null, GearmanPacketCodec.RESET_ABILITIES));
+        for (String name : new String[] {"build:lemon", "build:lime", "build:lemon:linux"}) {
+            int id = FunctionNameTable.acquire(name);
+            session.submitTask(new GearmanTask(null, FunctionNameTable.canDo(id)));
+        }
+        int lime = FunctionNameTable.acquire("build:lime");
+        session.submitTask(new GearmanTask(null, FunctionNameTable.cantDo(lime)));
+        Responses grab = submit(GearmanPacketCodec.GRAB_JOB_UNIQ);
+        drive(grab::isDone);
+
+        assertEquals(GearmanPacketType.NO_JOB, grab.packets.get(0).getPacketType());
+        // The server handled the packets in order before answering
+        assertEquals(new HashSet<String>(Arrays.asList("build:lemon", "build:lemon:linux")),
+                     server.getAbilities());
+    }
+
+    @Test
+    public void testManyRoundTrips() throws IOException {
+        for (int i = 0; i < 100; i++) {
+            byte[] data = ByteBuffer.allocate(4).putInt(i).array();
+            Responses echo = submit(new GearmanPacketImpl(GearmanPacketMagic.REQ,
+                GearmanPacketType.ECHO_REQ, data));
+            drive(echo::isDone);
+            assertArrayEquals(data, echo.packets.get(0).getData());
+        }
+    }
+
+    @Test
+    public void testServerDisconnect() throws IOException {
+        // Make sure the connection was accepted first
+        Responses echo = submit(GearmanPacketCodec.ECHO_REQ);
+        drive(echo::isDone);
+
+        server.disconnectAll();
+        drive(() -> !session.isInitialized());
+        assertFalse(session.isInitialized());
+    }
+
+    @Test
+    public void testConnectionOf() {
+        assertTrue(transport.isConnectionOf(connection));
+        assertEquals(transport.getClass(), GearmanTransport.of(connection).getClass());
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ *
+ * Copyright 2026 Jenkins project contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package hudson.plugins.gearman;
+
+import java.util.Collections;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Test for the {@link GrabGate} class.
+ */
+public class GrabGateTest {
+
+    @Test
+    public void testDisabledByDefault() {
+        assertNull(GrabGate.forFunctions(Collections.singleton("build:lemon")));
+    }
+
+    @Test
+    public void testOnlyMaxSleepersSleep() {
+        GrabGate gate = new GrabGate(Collections.singleton("build:lemon"), 2);
+        MyGearmanWorkerImpl first = mock(MyGearmanWorkerImpl.class);
+        MyGearmanWorkerImpl second = mock(MyGearmanWorkerImpl.class);
+        MyGearmanWorkerImpl third = mock(MyGearmanWorkerImpl.class);
+
+        assertTrue(gate.enterSleep(first));
+        assertTrue(gate.enterSleep(second));
+        assertFalse(gate.enterSleep(third));
+        assertEquals(2, gate.getSleepers());
+        assertEquals(1, gate.getParked());
+
+        // A sleeper woken up which did not get a job keeps its slot
+        gate.leaveSleep(first);
+        assertTrue(gate.enterSleep(first));
+        verify(third, never()).unpark();
+    }
+
+    @Test
+    public void testJobAssignedReleasesParkedWorker() {
+        GrabGate gate = new GrabGate(Collections.singleton("build:lemon"), 1);
+        MyGearmanWorkerImpl first = mock(MyGearmanWorkerImpl.class);
+        MyGearmanWorkerImpl second = mock(MyGearmanWorkerImpl.class);
+
+        assertTrue(gate.enterSleep(first));
+        assertFalse(gate.enterSleep(second));
+
+        gate.leaveSleep(first);
+        gate.jobAssigned(first);
+        verify(second).unpark();
+        assertEquals(0, gate.getParked());
+
+        // The released worker takes the free slot once it got NO_JOB
+        assertTrue(gate.enterSleep(second));
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ *
+ * Copyright 2026 Jenkins project contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package hudson.plugins.gearman;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test for the {@link LatencyHistogram} class.
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 99; i++) {
+            histogram.record(300000);       // 0.3ms
+        }
+        histogram.record(20000000);         // 20ms
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(0.497, histogram.getMeanMillis(), 0.001);
+        assertEquals(20.0, histogram.getMaxMillis(), 0.001);
+        // Upper bound of the 256-512us bucket
+        assertEquals(0.512, histogram.getMedianMillis(), 0.001);
+        assertEquals(0.512, histogram.getP99Millis(), 0.001);
+        assertEquals(20.0, histogram.getPercentileMillis(100), 0.001);
+    }
+
+    @Test
+    public void testEmpty() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMedianMillis(), 0);
+    }
+
+    @Test
+    public void testPerServer() {
+        LatencyHistogram histogram = LatencyHistogram.forServer("localhost:4730");
+
+        assertSame(histogram, LatencyHistogram.forServer("localhost:4730"));
+        assertTrue(LatencyHistogram.getServers().containsKey("localhost:4730"));
+    }
+}
@@ -0,0 +1,396 @@
+/*
+ *
+ * Copyright 2026 Jenkins project contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package hudson.plugins.gearman;
+
+import hudson.model.Computer;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.gearman.client.GearmanJobResult;
+import org.gearman.client.GearmanJobResultImpl;
+import org.gearman.common.GearmanJobServerConnection;
+import org.gearman.common.GearmanPacketType;
+import org.gearman.worker.AbstractGearmanFunction;
+import org.gearman.worker.GearmanFunction;
+import org.gearman.worker.GearmanFunctionFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Tests {@link MyGearmanWorkerImpl} running against a {@link FakeGearmanServer}.
+ */
+public class MyGearmanWorkerImplTest {
+
+    // What the gearman-java session may allocate in an idle cycle
+    private static final long IDLE_CYCLE_BYTES = 128;
+
+    private FakeGearmanServer server;
+    private FakeGearmanServer secondary;
+    private MyGearmanWorkerImpl worker;
+    private Thread thread;
+
+    // Completes once all functions sharing the latch are running
+    private static class LatchFunction extends AbstractGearmanFunction {
+        private final CountDownLatch running;
+
+        LatchFunction(CountDownLatch running) {
+            this.running = running;
+        }
+
+        @Override
+        public GearmanJobResult executeFunction() {
+            running.countDown();
+            boolean together;
+            try {
+                together = running.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                together = false;
+            }
+            return new GearmanJobResultImpl(jobHandle, together,
+                "done".getBytes(StandardCharsets.UTF_8), new byte[0], new byte[0], 0, 0);
+        }
+    }
+
+    private static class LatchFunctionFactory implements GearmanFunctionFactory {
+        private final String name;
+        private final CountDownLatch running;
+
+        LatchFunctionFactory(String name, CountDownLatch running) {
+            this.name = name;
+            this.running = running;
+        }
+
+        public String getFunctionName() {
+            return name;
+        }
+
+        public GearmanFunction getFunction() {
+            return new LatchFunction(running);
+        }
+    }
+
+    // Records the worker it was created for
+    public static class BoundFunction extends AbstractGearmanFunction {
+        static final AtomicReference<MyGearmanWorkerImpl> bound =
+            new AtomicReference<MyGearmanWorkerImpl>();
+
+        public BoundFunction(GearmanProject project, Computer computer,
+                             String builtInName, MyGearmanWorkerImpl worker) {
+            bound.set(worker);
+        }
+
+        @Override
+        public GearmanJobResult executeFunction() {
+            return new GearmanJobResultImpl(jobHandle, true, new byte[0],
+                                            new byte[0], new byte[0], 0, 0);
+        }
+    }
+
+    // Holds workers in lock() until opened, after letting some through
+    private static class GateMonitor extends NoopAvailabilityMonitor {
+        final CountDownLatch waiting = new CountDownLatch(1);
+        final CountDownLatch open = new CountDownLatch(1);
+        private final AtomicInteger passes;
+
+        GateMonitor(int passes) {
+            this.passes = new AtomicInteger(passes);
+        }
+
+        @Override
+        public void lock(MyGearmanWorkerImpl worker) throws InterruptedException {
+            if (passes.getAndDecrement() > 0) {
+                return;
+            }
+            waiting.countDown();
+            open.await();
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FakeGearmanServer();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (worker != null) {
+            worker.stopGracefully();
+            thread.join(5000);
+        }
+        server.close();
+        if (secondary != null) {
+            secondary.close();
+        }
+    }
+
+    private void start(ExecutorService executor, GearmanFunctionFactory factory) {
+        start(executor, factory, null);
+    }
+
+    private void start(ExecutorService executor, GearmanFunctionFactory factory,
+                       StandbySession standby) {
+        start(executor, factory, standby, new NoopAvailabilityMonitor());
+    }
+
+    private void start(ExecutorService executor, GearmanFunctionFactory factory,
+                       StandbySession standby, AvailabilityMonitor availability) {
+        start(executor, factory, standby, availability,
+              AbstractWorkerThread.createConnection("localhost", server.getPort()));
+    }
+
+    private void start(ExecutorService executor, GearmanFunctionFactory factory,
+                       StandbySession standby, AvailabilityMonitor availability,
+                       GearmanJobServerConnection connection) {
+        worker = new MyGearmanWorkerImpl(executor, availability);
+        worker.setStandby(standby);
+        worker.addServer(connection);
+        worker.setFunctions(Collections.singleton(factory));
+        thread = new Thread(worker::work, "Worker under test");
+        thread.start();
+    }
+
+    @Test
+    public void testConcurrentJobsDeliverResults() throws Exception {
+        int jobs = 4;
+        CountDownLatch running = new CountDownLatch(jobs);
+        start(Executors.newFixedThreadPool(jobs), new LatchFunctionFactory("build:lemon", running));
+        assertTrue(FakeGearmanServer.await(
+            () -> server.getAbilities().contains("build:lemon")));
+
+        Map<String, GearmanPacketType> expected = new HashMap<String, GearmanPacketType>();
+        for (int i = 0; i < jobs; i++) {
+            server.addJob("build:lemon", "H:lemon:" + i, new byte[0]);
+            expected.put("H:lemon:" + i, GearmanPacketType.WORK_COMPLETE);
+        }
+
+        // The jobs only complete if they all ran at the same time, then
+        // each result is relayed to the shared session.
+        assertTrue(FakeGearmanServer.await(() -> server.getResults().size() == jobs));
+        assertEquals(expected, server.getResults());
+        assertTrue(FakeGearmanServer.await(() -> worker.getRunningFunctions() == 0));
+    }
+
+    @Test
+    public void testCustomFunctionIsBoundToTheWorker() throws Exception {
+        BoundFunction.bound.set(null);
+        start(null, new CustomGearmanFunctionFactory("build:lemon", BoundFunction.class.getName(),
+                                                     null, null, "built-in"));
+        assertTrue(FakeGearmanServer.await(
+            () -> server.getAbilities().contains("build:lemon")));
+
+        server.addJob("build:lemon", "H:lemon:1", new byte[0]);
+        assertTrue(FakeGearmanServer.await(() -> server.getResults().size() == 1));
+        assertEquals(GearmanPacketType.WORK_COMPLETE, server.getResults().get("H:lemon:1"));
+        assertSame(worker, BoundFunction.bound.get());
+        assertNull(MyGearmanWorkerImpl.current());
+    }
+
+    @Test
+    public void testFailoverToStandby() throws Exception {
+        secondary = new FakeGearmanServer();
+        start(null, new LatchFunctionFactory("build:lemon", new CountDownLatch(0)),
+              new StandbySession("localhost", secondary.getPort(),
+                                 "localhost", server.getPort()));
+        assertTrue(FakeGearmanServer.await(
+            () -> server.getAbilities().contains("build:lemon") &&
+                  secondary.getAbilities().contains("build:lemon")));
+        assertEquals(1, secondary.getReceived(GearmanPacketType.RESET_ABILITIES));
+        assertEquals(1, secondary.getReceived(GearmanPacketType.CAN_DO));
+
+        long failovers = StandbySession.getFailovers();
+        server.disconnectAll();
+
+        // The next standby goes to the former primary server
+        assertTrue(FakeGearmanServer.await(
+            () -> worker.getStandby().getPort() == server.getPort()));
+        assertEquals(failovers + 1, StandbySession.getFailovers());
+        assertTrue(FakeGearmanServer.await(
+            () -> server.getAbilities().contains("build:lemon")));
+
+        // The promoted session grabs jobs with the functions the standby
+        // registered, they are not registered again.
+        secondary.addJob("build:lemon", "H:lemon:0", new byte[0]);
+        assertTrue(FakeGearmanServer.await(
+            () -> secondary.getResults().containsKey("H:lemon:0")));
+        assertEquals(1, secondary.getReceived(GearmanPacketType.RESET_ABILITIES));
+        assertEquals(1, secondary.getReceived(GearmanPacketType.CAN_DO));
+        assertEquals(1, secondary.getClientCount());
+    }
+
+    @Test
+    public void testNoFailoverToHungStandby() throws Exception {
+        secondary = new FakeGearmanServer();
+        start(null, new LatchFunctionFactory("build:lemon", new CountDownLatch(0)),
+              new StandbySession("localhost", secondary.getPort(),
+                                 "localhost", server.getPort()));
+        assertTrue(FakeGearmanServer.await(
+            () -> server.getAbilities().contains("build:lemon") &&
+                  secondary.getAbilities().contains("build:lemon")));
+
+        long failovers = StandbySession.getFailovers();
+        secondary.setEchoing(false);
+        server.disconnectAll();
+
+        // The standby did not answer, the worker connects to its server again
+        assertTrue(FakeGearmanServer.await(
+            () -> server.getAbilities().contains("build:lemon")));
+        assertEquals(failovers, StandbySession.getFailovers());
+        assertEquals(secondary.getPort(), worker.getStandby().getPort());
+        server.addJob("build:lemon", "H:lemon:0", new byte[0]);
+        assertTrue(FakeGearmanServer.await(
+            () -> server.getResults().containsKey("H:lemon:0")));
+    }
+
+    private int grabs() {
+        return server.getReceived(GearmanPacketType.GRAB_JOB) +
+               server.getReceived(GearmanPacketType.GRAB_JOB_UNIQ);
+    }
+
+    @Test
+    public void testDrainingResetsAbilities() throws Exception {
+        start(null, new LatchFunctionFactory("build:lemon", new CountDownLatch(0)));
+        assertTrue(FakeGearmanServer.await(
+            () -> server.getAbilities().contains("build:lemon") &&
+                  server.getReceived(GearmanPacketType.PRE_SLEEP) > 0));
+
+        worker.setDraining(true);
+        assertTrue(FakeGearmanServer.await(() -> server.getAbilities().isEmpty()));
+        assertTrue(FakeGearmanServer.await(worker::isDrained));
+
+        // A NOOP does not draw a GRAB_JOB anymore
+        int grabs = grabs();
+        server.noopAll();
+        Thread.sleep(500);
+        assertEquals(grabs, grabs());
+        assertTrue(worker.isDrained());
+
+        worker.setDraining(false);
+        assertFalse(worker.isDrained());
+        assertTrue(FakeGearmanServer.await(
+            () -> server.getAbilities().contains("build:lemon")));
+    }
+
+    @Test
+    public void testNotDrainedUntilResultIsDelivered() throws Exception {
+        // Runs until the test counts the latch down too
+        CountDownLatch running = new CountDownLatch(2);
+        start(Executors.newFixedThreadPool(1), new LatchFunctionFactory("build:lemon", running));
+        assertTrue(FakeGearmanServer.await(
+            () -> server.getAbilities().contains("build:lemon")));
+        server.addJob("build:lemon", "H:lemon:0", new byte[0]);
+        assertTrue(FakeGearmanServer.await(() -> running.getCount() == 1));
+
+        worker.setDraining(true);
+        assertTrue(FakeGearmanServer.await(() -> server.getAbilities().isEmpty()));
+        assertFalse(worker.isDrained());
+
+        running.countDown();
+        assertTrue(FakeGearmanServer.await(worker::isDrained));
+        assertEquals(0, worker.getRunningFunctions());
+        // It was written out by then
+        assertTrue(FakeGearmanServer.await(
+            () -> server.getResults().get("H:lemon:0") == GearmanPacketType.WORK_COMPLETE));
+    }
+
+    @Test
+    public void testDrainingWhileWaitingForTheNode() throws Exception {
+        GateMonitor availability = new GateMonitor(0);
+        start(null, new LatchFunctionFactory("build:lemon", new CountDownLatch(0)),
+              null, availability);
+        assertTrue(availability.waiting.await(5, TimeUnit.SECONDS));
+        server.addJob("build:lemon", "H:lemon:0", new byte[0]);
+
+        // The worker would grab a job once it gets the node
+        worker.setDraining(true);
+        assertFalse(worker.isDrained());
+
+        availability.open.countDown();
+        assertTrue(FakeGearmanServer.await(worker::isDrained));
+        assertTrue(FakeGearmanServer.await(() -> server.getAbilities().isEmpty()));
+        assertEquals(0, grabs());
+        assertTrue(server.getResults().isEmpty());
+    }
+
+    @Test
+    public void testResultIsWrittenBeforeTheNextGrab() throws Exception {
+        server.addJob("build:lemon", "H:lemon:0", new byte[0]);
+        // The first grab gets the job, the next one waits for the node
+        GateMonitor availability = new GateMonitor(1);
+        start(null, new LatchFunctionFactory("build:lemon", new CountDownLatch(0)),
+              null, availability, new GearmanSocketConnection("localhost", server.getPort()));
+        assertTrue(availability.waiting.await(5, TimeUnit.SECONDS));
+
+        // The connection queues writes, the result went out anyway
+        assertTrue(FakeGearmanServer.await(
+            () -> server.getResults().get("H:lemon:0") == GearmanPacketType.WORK_COMPLETE));
+        availability.open.countDown();
+    }
+
+    /*
+     * Once warmed up, an idle cycle of the run loop (NOOP, GRAB_JOB,
+     * NO_JOB, PRE_SLEEP) allocates no events, packets, tasks or handlers.
+     * What is left is the bookkeeping of the gearman-java session, like
+     * the nodes of its task queue.
+     */
+    @Test
+    public void testIdleCycleAllocations() throws Exception {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        start(null, new LatchFunctionFactory("build:lemon", new CountDownLatch(0)),
+              null, new NoopAvailabilityMonitor(),
+              new GearmanSocketConnection("localhost", server.getPort()));
+        assertTrue(FakeGearmanServer.await(
+            () -> server.getReceived(GearmanPacketType.PRE_SLEEP) > 0));
+
+        int cycles = 200;
+        long allocated = 0;
+        // The first rounds warm up the JIT
+        for (int round = 0; round < 3; round++) {
+            long before = threads.getThreadAllocatedBytes(thread.getId());
+            for (int i = 0; i < cycles; i++) {
+                int sleeps = server.getReceived(GearmanPacketType.PRE_SLEEP);
+                server.noopAll();
+                assertTrue(FakeGearmanServer.await(
+                    () -> server.getReceived(GearmanPacketType.PRE_SLEEP) > sleeps));
+            }
+            allocated = threads.getThreadAllocatedBytes(thread.getId()) - before;
+        }
+
+        assertTrue("Allocated " + allocated / cycles + " bytes per idle cycle",
+                   allocated / cycles < IDLE_CYCLE_BYTES);
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ *
+ * Copyright 2026 Jenkins project contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package hudson.plugins.gearman;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test for the {@link RegistrationThrottle} class.
+ */
+public class RegistrationThrottleTest {
+
+    @Test
+    public void testResumeWhereLeftOff() {
+        RegistrationThrottle throttle = new RegistrationThrottle(100);
+        Object worker = new Object();
+
+        assertEquals(100, throttle.acquire(worker, 250, true));
+        assertEquals(1, throttle.getPendingWorkers());
+        assertEquals(150, throttle.getPendingPackets());
+        // The burst is used up
+        assertEquals(0, throttle.acquire(worker, 150, true));
+        assertEquals(150, throttle.getPendingPackets());
+
+        throttle.cancel(worker);
+        assertEquals(0, throttle.getPendingWorkers());
+        assertEquals(0, throttle.getPendingPackets());
+        assertEquals(100, throttle.getSentPackets());
+    }
+
+    @Test
+    public void testRefill() throws Exception {
+        RegistrationThrottle throttle = new RegistrationThrottle(100);
+        Object worker = new Object();
+
+        assertEquals(100, throttle.acquire(worker, 200, true));
+        Thread.sleep(200);
+        int granted = throttle.acquire(worker, 100, true);
+        assertTrue("granted " + granted, granted >= 10 && granted <= 100);
+    }
+
+    @Test
+    public void testIdleWorkersFirst() throws Exception {
+        RegistrationThrottle throttle = new RegistrationThrottle(1000);
+        Object idle = new Object();
+        Object busy = new Object();
+
+        // The idle worker only got part of what it asked for
+        assertEquals(1000, throttle.acquire(idle, 1500, true));
+        assertEquals(1, throttle.getPendingIdleWorkers());
+        Thread.sleep(100);
+
+        // Nothing for busy workers while an idle worker is waiting
+        assertEquals(0, throttle.acquire(busy, 1, false));
+        assertEquals(2, throttle.getPendingWorkers());
+        assertTrue(throttle.acquire(idle, 500, true) > 0);
+
+        // Once it is done the busy worker gets its turn
+        throttle.cancel(idle);
+        assertEquals(0, throttle.getPendingIdleWorkers());
+        assertEquals(1, throttle.getPendingWorkers());
+        assertEquals(1, throttle.getPendingPackets());
+    }
+
+    @Test
+    public void testDisabled() {
+        RegistrationThrottle throttle = new RegistrationThrottle(0);
+        Object worker = new Object();
+
+        assertFalse(throttle.isEnabled());
+        assertEquals(100000, throttle.acquire(worker, 100000, false));
+        assertEquals(0, throttle.getPendingWorkers());
+        assertEquals(100000, throttle.getSentPackets());
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ *
+ * Copyright 2026 Jenkins project contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package hudson.plugins.gearman;
+
+import hudson.model.Action;
+import hudson.model.Cause;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Label;
+import hudson.model.ParameterValue;
+import hudson.model.queue.QueueTaskFuture;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test for the {@link ScheduleBatcher} class.
+ */
+public class ScheduleBatcherTest {
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    // Holds the batch scheduling its build until released
+    private static class BlockingProject
+            extends GearmanProject<FreeStyleProject, FreeStyleBuild> {
+        final CountDownLatch scheduling = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        BlockingProject(FreeStyleProject project) {
+            super(project);
+        }
+
+        @Override
+        boolean isDisabled() {
+            return false;
+        }
+
+        @Override
+        Label getAssignedLabel() {
+            return null;
+        }
+
+        @Override
+        QueueTaskFuture scheduleBuild2(int quietPeriod, Cause c, Action... actions) {
+            scheduling.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        }
+    }
+
+    @Test
+    public void testScheduleConcurrently() throws Exception {
+        int count = 8;
+        List<GearmanProject> projects = new ArrayList<GearmanProject>();
+        for (int i = 0; i < count; i++) {
+            projects.add(GearmanProject.projectFactory(
+                j.createFreeStyleProject("project-" + i)));
+        }
+
+        long requestsBefore = ScheduleBatcher.getInstance().getRequests();
+        long batchesBefore = ScheduleBatcher.getInstance().getBatches();
+
+        ExecutorService pool = Executors.newFixedThreadPool(count);
+        List<Future<QueueTaskFuture<?>>> results = new ArrayList<Future<QueueTaskFuture<?>>>();
+        for (final GearmanProject project : projects) {
+            results.add(pool.submit(() -> {
+                Action params = new NodeParametersAction(new ArrayList<ParameterValue>(),
+                                                         UUID.randomUUID().toString());
+                return ScheduleBatcher.getInstance().schedule(
+                    project, new Cause.UserIdCause(), params);
+            }));
+        }
+
+        // Every caller gets the future of its own build
+        for (int i = 0; i < count; i++) {
+            QueueTaskFuture<?> future = results.get(i).get();
+            assertNotNull(future);
+            future.get();
+            FreeStyleProject project = (FreeStyleProject) projects.get(i).getJob();
+            assertEquals(1, project.getBuilds().size());
+        }
+        pool.shutdown();
+
+        long requests = ScheduleBatcher.getInstance().getRequests() - requestsBefore;
+        long batches = ScheduleBatcher.getInstance().getBatches() - batchesBefore;
+        assertEquals(count, requests);
+        assertTrue(batches >= 1 && batches <= count);
+    }
+
+    @Test
+    public void testBatchesDoNotOverlap() throws Exception {
+        int count = 4;
+        List<GearmanProject> projects = new ArrayList<GearmanProject>();
+        for (int i = 0; i < count; i++) {
+            projects.add(GearmanProject.projectFactory(
+                j.createFreeStyleProject("project-" + i)));
+        }
+        ScheduleBatcher batcher = new ScheduleBatcher();
+        BlockingProject blocking = new BlockingProject(j.createFreeStyleProject("blocking"));
+        ExecutorService pool = Executors.newCachedThreadPool();
+        Future<QueueTaskFuture<?>> first = pool.submit(
+            () -> batcher.schedule(blocking, new Cause.UserIdCause()));
+        assertTrue(blocking.scheduling.await(5, TimeUnit.SECONDS));
+
+        // Requests made while the first batch is scheduled wait for it
+        List<Future<QueueTaskFuture<?>>> results = new ArrayList<Future<QueueTaskFuture<?>>>();
+        for (int i = 0; i < count; i++) {
+            GearmanProject project = projects.get(i);
+            results.add(pool.submit(
+                () -> batcher.schedule(project, new Cause.UserIdCause())));
+            int pending = i + 1;
+            assertTrue(FakeGearmanServer.await(() -> batcher.getPending() == pending));
+        }
+        assertEquals(1, batcher.getBatches());
+
+        blocking.release.countDown();
+        assertNull(first.get(5, TimeUnit.SECONDS));
+        for (Future<QueueTaskFuture<?>> result : results) {
+            assertNotNull(result.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(2, batcher.getBatches());
+        assertEquals(count + 1, batcher.getRequests());
+        pool.shutdown();
+    }
+
+    @Test
+    public void testInterruptedRequestIsWithdrawn() throws Exception {
+        FreeStyleProject lemon = j.createFreeStyleProject("lemon");
+        ScheduleBatcher batcher = new ScheduleBatcher();
+        BlockingProject blocking = new BlockingProject(j.createFreeStyleProject("blocking"));
+        Thread first = new Thread(() -> {
+            try {
+                batcher.schedule(blocking, new Cause.UserIdCause());
+            } catch (Exception e) {
+                // Test fails on the batch count
+            }
+        });
+        first.start();
+        assertTrue(blocking.scheduling.await(5, TimeUnit.SECONDS));
+
+        AtomicReference<Exception> thrown = new AtomicReference<Exception>();
+        Thread waiting = new Thread(() -> {
+            try {
+                batcher.schedule(GearmanProject.projectFactory(lemon), new Cause.UserIdCause());
+            } catch (Exception e) {
+                thrown.set(e);
+            }
+        });
+        waiting.start();
+        assertTrue(FakeGearmanServer.await(() -> batcher.getPending() == 1));
+        waiting.interrupt();
+        waiting.join(5000);
+        assertTrue(thrown.get() instanceof InterruptedException);
+
+        // The next batch skips it
+        blocking.release.countDown();
+        first.join(5000);
+        assertTrue(FakeGearmanServer.await(() -> batcher.getBatches() == 2));
+        assertTrue(j.jenkins.getQueue().isEmpty());
+        assertEquals(0, lemon.getBuilds().size());
+    }
+}
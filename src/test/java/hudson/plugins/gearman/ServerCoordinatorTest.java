@@ -0,0 +1,226 @@
+/*
+ *
+ * Copyright 2026 Jenkins project contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package hudson.plugins.gearman;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Test for the {@link ServerCoordinator} class.
+ */
+public class ServerCoordinatorTest {
+
+    // Probes and waves are run by the test instead of the scheduler.
+    private static class TestCoordinator extends ServerCoordinator {
+        boolean reachable = false;
+
+        TestCoordinator() {
+            super("localhost", 4730, mock(ScheduledExecutorService.class));
+        }
+
+        @Override
+        protected void connect(SocketAddress address) throws IOException {
+            if (!reachable) {
+                throw new ConnectException("Connection refused");
+            }
+        }
+    }
+
+    private static void refuse(ServerCoordinator coordinator, int times) {
+        for (int i = 0; i < times; i++) {
+            coordinator.connectFailed(new ConnectException("Connection refused"));
+        }
+    }
+
+    private static void awaitWaiting(ServerCoordinator coordinator, int count)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (coordinator.getWaiting() != count) {
+            assertTrue("Expected " + count + " waiting workers, got " +
+                       coordinator.getWaiting(),
+                       System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void testOpensAfterFailures() throws Exception {
+        TestCoordinator coordinator = new TestCoordinator();
+
+        refuse(coordinator, ServerCoordinator.FAILURE_THRESHOLD - 1);
+        assertEquals(ServerCoordinator.State.CLOSED, coordinator.getState());
+        assertTrue(coordinator.awaitTurn(0));
+
+        // A success in between starts the count over
+        coordinator.connectSucceeded();
+        refuse(coordinator, ServerCoordinator.FAILURE_THRESHOLD - 1);
+        assertEquals(ServerCoordinator.State.CLOSED, coordinator.getState());
+        assertNull(coordinator.getDownSince());
+
+        refuse(coordinator, 1);
+        assertEquals(ServerCoordinator.State.OPEN, coordinator.getState());
+        assertNotNull(coordinator.getDownSince());
+        assertFalse(coordinator.awaitTurn(20));
+
+        // Still down
+        coordinator.probe();
+        assertEquals(ServerCoordinator.State.OPEN, coordinator.getState());
+        assertFalse(coordinator.awaitTurn(20));
+    }
+
+    @Test
+    public void testReleaseInWaves() throws Exception {
+        final TestCoordinator coordinator = new TestCoordinator();
+        refuse(coordinator, ServerCoordinator.FAILURE_THRESHOLD);
+
+        int workers = ServerCoordinator.WAVE_SIZE + ServerCoordinator.WAVE_SIZE / 2;
+        final AtomicInteger connected = new AtomicInteger();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < workers; i++) {
+            Thread t = new Thread(() -> {
+                try {
+                    while (!coordinator.awaitTurn(1000)) {
+                    }
+                    connected.incrementAndGet();
+                } catch (InterruptedException e) {
+                    // Test failed
+                }
+            });
+            t.start();
+            threads.add(t);
+        }
+        awaitWaiting(coordinator, workers);
+        assertEquals(0, connected.get());
+
+        coordinator.reachable = true;
+        coordinator.probe();
+        assertEquals(ServerCoordinator.State.HALF_OPEN, coordinator.getState());
+        awaitWaiting(coordinator, workers - ServerCoordinator.WAVE_SIZE);
+
+        coordinator.releaseWave();
+        awaitWaiting(coordinator, 0);
+        for (Thread t : threads) {
+            t.join(5000);
+        }
+        assertEquals(workers, connected.get());
+        assertEquals(ServerCoordinator.State.HALF_OPEN, coordinator.getState());
+
+        // Nobody is waiting anymore
+        coordinator.releaseWave();
+        assertEquals(ServerCoordinator.State.CLOSED, coordinator.getState());
+        assertNull(coordinator.getDownSince());
+    }
+
+    @Test
+    public void testFailureWhileHalfOpen() throws Exception {
+        final TestCoordinator coordinator = new TestCoordinator();
+        refuse(coordinator, ServerCoordinator.FAILURE_THRESHOLD);
+        Thread worker = new Thread(() -> {
+            try {
+                coordinator.awaitTurn(5000);
+            } catch (InterruptedException e) {
+                // Test failed
+            }
+        });
+        worker.start();
+        awaitWaiting(coordinator, 1);
+
+        coordinator.reachable = true;
+        coordinator.probe();
+        worker.join(5000);
+        assertEquals(ServerCoordinator.State.HALF_OPEN, coordinator.getState());
+
+        // The released worker could not connect after all
+        refuse(coordinator, 1);
+        assertEquals(ServerCoordinator.State.OPEN, coordinator.getState());
+        assertNotNull(coordinator.getDownSince());
+        assertFalse(coordinator.awaitTurn(20));
+    }
+
+    @Test
+    public void testSharedPerServer() {
+        assertSame(ServerCoordinator.forServer("gearman.example.org", 4730),
+                   ServerCoordinator.forServer("gearman.example.org", 4730));
+        assertNotSame(ServerCoordinator.forServer("gearman.example.org", 4730),
+                      ServerCoordinator.forServer("gearman.example.org", 4731));
+        assertEquals("gearman.example.org:4730",
+                     ServerCoordinator.forServer("gearman.example.org", 4730).toString());
+    }
+
+    @Test
+    public void testRetainClosesUnusedCoordinators() throws Exception {
+        final ServerCoordinator gone = ServerCoordinator.forServer("gone.example.org", 4730);
+        ServerCoordinator kept = ServerCoordinator.forServer("kept.example.org", 4730);
+        refuse(gone, ServerCoordinator.FAILURE_THRESHOLD);
+        assertEquals(ServerCoordinator.State.OPEN, gone.getState());
+        Thread worker = new Thread(() -> {
+            try {
+                gone.awaitTurn(5000);
+            } catch (InterruptedException e) {
+                // Test failed
+            }
+        });
+        worker.start();
+        awaitWaiting(gone, 1);
+
+        ServerCoordinator.retain(Collections.singletonList(
+            new FunctionPartitioner.Server("kept.example.org", 4730)));
+        assertFalse(ServerCoordinator.getServers().containsKey("gone.example.org:4730"));
+        assertSame(kept, ServerCoordinator.getServers().get("kept.example.org:4730"));
+
+        // The waiting worker is let go and the server is not reported down
+        worker.join(5000);
+        assertFalse(worker.isAlive());
+        assertTrue(gone.isClosed());
+        assertEquals(ServerCoordinator.State.CLOSED, gone.getState());
+        assertNull(gone.getDownSince());
+
+        // Failing workers don't open it again
+        refuse(gone, ServerCoordinator.FAILURE_THRESHOLD);
+        assertEquals(ServerCoordinator.State.CLOSED, gone.getState());
+
+        ServerCoordinator.retain(Collections.<FunctionPartitioner.Server>emptyList());
+        assertTrue(ServerCoordinator.getServers().isEmpty());
+    }
+
+    @Test
+    public void testCurrentReplacesClosedCoordinator() {
+        ServerCoordinator old = ServerCoordinator.forServer("back.example.org", 4730);
+        assertSame(old, old.current());
+
+        ServerCoordinator.retain(Collections.<FunctionPartitioner.Server>emptyList());
+        ServerCoordinator fresh = old.current();
+        assertNotSame(old, fresh);
+        assertFalse(fresh.isClosed());
+        assertSame(fresh, ServerCoordinator.getServers().get("back.example.org:4730"));
+        assertSame(fresh, old.current());
+        ServerCoordinator.retain(Collections.<FunctionPartitioner.Server>emptyList());
+    }
+}
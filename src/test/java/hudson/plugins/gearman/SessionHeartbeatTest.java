@@ -0,0 +1,79 @@
+/*
+ *
+ * Copyright 2026 Jenkins project contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package hudson.plugins.gearman;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test for the {@link SessionHeartbeat} class.
+ */
+public class SessionHeartbeatTest {
+
+    private static final long INTERVAL = TimeUnit.MILLISECONDS.toNanos(1000);
+
+    @Test
+    public void testEchoWhenIdle() {
+        SessionHeartbeat heartbeat = new SessionHeartbeat(1000, 3);
+        heartbeat.reset(0);
+
+        assertEquals(SessionHeartbeat.Action.NONE, heartbeat.check(INTERVAL / 2));
+        heartbeat.activity(INTERVAL / 2);
+        assertEquals(SessionHeartbeat.Action.NONE, heartbeat.check(INTERVAL));
+        assertEquals(SessionHeartbeat.Action.SEND_ECHO, heartbeat.check(INTERVAL * 3 / 2));
+        // Only one echo at a time
+        assertEquals(SessionHeartbeat.Action.NONE, heartbeat.check(INTERVAL * 2));
+
+        assertEquals(INTERVAL, heartbeat.echoReceived(INTERVAL * 5 / 2));
+        assertEquals(-1, heartbeat.echoReceived(INTERVAL * 3));
+    }
+
+    @Test
+    public void testReconnectAfterMissedEchos() {
+        SessionHeartbeat heartbeat = new SessionHeartbeat(1000, 2);
+        heartbeat.reset(0);
+
+        assertEquals(SessionHeartbeat.Action.SEND_ECHO, heartbeat.check(INTERVAL));
+        assertEquals(SessionHeartbeat.Action.SEND_ECHO, heartbeat.check(INTERVAL * 2));
+        assertEquals(1, heartbeat.getMissed());
+        assertEquals(SessionHeartbeat.Action.RECONNECT, heartbeat.check(INTERVAL * 3));
+
+        heartbeat.reset(INTERVAL * 3);
+        assertEquals(0, heartbeat.getMissed());
+    }
+
+    @Test
+    public void testDisabled() {
+        SessionHeartbeat heartbeat = new SessionHeartbeat(0, 3);
+
+        assertFalse(heartbeat.isEnabled());
+        assertEquals(SessionHeartbeat.Action.NONE, heartbeat.check(Long.MAX_VALUE / 2));
+    }
+
+    @Test
+    public void testMillisUntilDue() {
+        SessionHeartbeat heartbeat = new SessionHeartbeat(1000, 3);
+        heartbeat.reset(0);
+
+        assertEquals(751, heartbeat.millisUntilDue(INTERVAL / 4));
+        assertEquals(1, heartbeat.millisUntilDue(INTERVAL * 2));
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ *
+ * Copyright 2026 Jenkins project contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package hudson.plugins.gearman;
+
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SocketChannel;
+
+import jdk.net.ExtendedSocketOptions;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeNoException;
+
+/**
+ * Test for the {@link SocketTuning} class.
+ */
+public class SocketTuningTest {
+
+    @Test
+    public void testTcpOptionsAreApplied() throws IOException {
+        try (SocketChannel channel = SocketChannel.open()) {
+            SocketTuning.apply(channel, true);
+
+            assertEquals(SocketTuning.TCP_NO_DELAY,
+                         channel.getOption(StandardSocketOptions.TCP_NODELAY));
+            assertEquals(SocketTuning.KEEP_ALIVE,
+                         channel.getOption(StandardSocketOptions.SO_KEEPALIVE));
+            assertTrue(SocketTuning.set(channel, StandardSocketOptions.SO_RCVBUF, 32768));
+            assertTrue(channel.getOption(StandardSocketOptions.SO_RCVBUF) > 0);
+        }
+    }
+
+    @Test
+    public void testUnsupportedOptionsAreSkippedOnUnixSockets() throws IOException {
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+        } catch (UnsupportedOperationException e) {
+            assumeNoException(e);
+            return;
+        }
+        try {
+            // Only the buffer sizes apply to unix domain sockets
+            SocketTuning.apply(channel, false);
+
+            assertFalse(SocketTuning.set(channel, StandardSocketOptions.TCP_NODELAY, true));
+            assertFalse(SocketTuning.set(channel, ExtendedSocketOptions.TCP_KEEPIDLE, 60));
+            assertTrue(SocketTuning.set(channel, StandardSocketOptions.SO_SNDBUF, 32768));
+        } finally {
+            channel.close();
+        }
+    }
+}
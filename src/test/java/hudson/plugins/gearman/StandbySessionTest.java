@@ -0,0 +1,78 @@
+/*
+ *
+ * Copyright 2026 Jenkins project contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package hudson.plugins.gearman;
+
+import org.gearman.common.GearmanSessionEvent;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Test for the {@link StandbySession} class.
+ */
+public class StandbySessionTest {
+
+    @Test
+    public void testForPrimary() {
+        assertNull(StandbySession.forPrimary(null, "primary", 4730));
+        assertNull(StandbySession.forPrimary(" ", "primary", 4730));
+        // Not a standby of itself
+        assertNull(StandbySession.forPrimary("primary:4730", "primary", 4730));
+        assertNull(StandbySession.forPrimary("primary:bogus", "primary", 4730));
+
+        StandbySession standby = StandbySession.forPrimary("secondary:4731", "primary", 4730);
+        assertEquals("secondary", standby.getHost());
+        assertEquals(4731, standby.getPort());
+
+        standby = StandbySession.forPrimary("secondary", "primary", 4730);
+        assertEquals("secondary", standby.getHost());
+        assertEquals(4730, standby.getPort());
+
+        standby = StandbySession.forPrimary("/run/gearmand.sock", "primary", 4730);
+        assertEquals("/run/gearmand.sock", standby.getHost());
+        assertEquals("/run/gearmand.sock", standby.toString());
+    }
+
+    @Test
+    public void testPromote() {
+        StandbySession standby = StandbySession.forPrimary("secondary:4731", "primary", 4730);
+        MyGearmanWorkerImpl worker = mock(MyGearmanWorkerImpl.class);
+        standby.setWorker(worker);
+        GearmanSessionEvent event = new GearmanSessionEvent(GearmanPacketCodec.NOOP, null);
+
+        // Replies to the standby are not for the worker
+        standby.handleSessionEvent(event);
+        verify(worker, never()).handleSessionEvent(event);
+        assertFalse(standby.isConnected());
+
+        long failovers = StandbySession.getFailovers();
+        StandbySession next = standby.promote();
+        assertEquals(failovers + 1, StandbySession.getFailovers());
+        standby.handleSessionEvent(event);
+        verify(worker).handleSessionEvent(event);
+
+        // The next standby goes to the former primary
+        assertEquals("primary", next.getHost());
+        assertEquals(4730, next.getPort());
+        assertEquals("secondary:4731", next.promote().toString());
+    }
+}
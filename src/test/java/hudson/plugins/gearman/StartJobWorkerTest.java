@@ -79,6 +79,27 @@ public class StartJobWorkerTest {
         assertEquals(1, project.getBuilds().size());
     }
 
+    @Test
+    public void testJobStart_RecordsQueueLatency() throws IOException, InterruptedException {
+        FreeStyleProject project = j.createFreeStyleProject("latency-project");
+        GearmanProject gearmanProject = GearmanProject.projectFactory(project);
+
+        StartJobWorker startJobWorker = createWorker(gearmanProject);
+        startJobWorker.setUniqueId(UUID.randomUUID().toString().getBytes("UTF-8"));
+        startJobWorker.setJobHandle("build:latency-project".getBytes("UTF-8"));
+
+        long before = SchedulingStatistics.getInstance().getBuilds();
+        assertEquals(-1, startJobWorker.getQueueWaitMillis());
+
+        GearmanJobResult jobResult = startJobWorker.executeFunction();
+        assertTrue(jobResult.jobSucceeded());
+
+        // We kick queue maintenance at least once ourselves
+        assertTrue(startJobWorker.getMaintenancePasses() >= 1);
+        assertTrue(startJobWorker.getQueueWaitMillis() >= 0);
+        assertEquals(before + 1, SchedulingStatistics.getInstance().getBuilds());
+    }
+
     @Test
     public void testJobStart_WorkflowJob() throws Exception {
         // setup project
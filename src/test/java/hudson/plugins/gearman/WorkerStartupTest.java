@@ -0,0 +1,127 @@
+/*
+ *
+ * Copyright 2026 Jenkins project contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package hudson.plugins.gearman;
+
+import hudson.model.Computer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.gearman.worker.GearmanFunctionFactory;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Test for the {@link WorkerStartup} class.
+ */
+public class WorkerStartupTest {
+
+    @Test
+    public void testPlanInParallel() {
+        WorkerStartup startup = new WorkerStartup(4);
+        List<Computer> computers = new ArrayList<Computer>();
+        for (int i = 0; i < 4; i++) {
+            computers.add(mock(Computer.class));
+        }
+        final Computer failing = computers.get(3);
+        // Every planner waits for the others, so this only completes when
+        // they run in parallel (or times out otherwise)
+        final CountDownLatch latch = new CountDownLatch(Math.min(3,
+            Runtime.getRuntime().availableProcessors()));
+        final AtomicInteger planned = new AtomicInteger();
+        Map<Computer, Map<String, GearmanFunctionFactory>> plans = startup.plan(computers, c -> {
+            if (c == failing) {
+                throw new IllegalStateException("Node went away");
+            }
+            latch.countDown();
+            try {
+                latch.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            planned.incrementAndGet();
+            return Collections.<String, GearmanFunctionFactory>emptyMap();
+        });
+
+        assertEquals(3, planned.get());
+        assertEquals(3, plans.size());
+        assertFalse(plans.containsKey(failing));
+        assertTrue(startup.getPlanMillis() >= 0);
+    }
+
+    @Test
+    public void testReadiness() {
+        WorkerStartup startup = new WorkerStartup(4);
+        Object first = new Object();
+        Object second = new Object();
+        assertEquals(-1, startup.getFirstGrabMillis());
+
+        startup.workerReady(first);
+        assertTrue(startup.getFirstGrabMillis() >= 0);
+        // Not all workers were started yet
+        assertEquals(-1, startup.getFullCapacityMillis());
+
+        startup.setExpected(2);
+        startup.workerReady(first);
+        assertEquals(1, startup.getReady());
+        assertEquals(-1, startup.getFullCapacityMillis());
+
+        startup.workerReady(second);
+        assertEquals(2, startup.getReady());
+        assertTrue(startup.getFullCapacityMillis() >= startup.getFirstGrabMillis());
+    }
+
+    @Test
+    public void testBoundedConnects() throws Exception {
+        final WorkerStartup startup = new WorkerStartup(2);
+        final AtomicInteger connecting = new AtomicInteger();
+        final AtomicInteger maxConnecting = new AtomicInteger();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 8; i++) {
+            Thread t = new Thread(() -> {
+                try {
+                    startup.acquireConnectSlot();
+                    try {
+                        maxConnecting.accumulateAndGet(connecting.incrementAndGet(), Math::max);
+                        Thread.sleep(20);
+                        connecting.decrementAndGet();
+                    } finally {
+                        startup.releaseConnectSlot();
+                    }
+                } catch (InterruptedException e) {
+                    // Test failed
+                }
+            });
+            t.start();
+            threads.add(t);
+        }
+        for (Thread t : threads) {
+            t.join(5000);
+        }
+        assertTrue(maxConnecting.get() <= 2);
+        assertEquals(0, connecting.get());
+    }
+}